@@ -0,0 +1,79 @@
+package chess.benchmarks;
+
+import chess.*;
+import mytools.Coordinates;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Microbenchmarks of the Board operations the search calls at every node
+ * Run with -prof gc to also see the bytes allocated per operation
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark {
+
+    @Param({Positions.START, Positions.KIWIPETE, Positions.MIDDLEGAME, Positions.ENDGAME})
+    public String m_fen;
+
+    private Board m_board;
+    private BoardHistory m_history;
+    private int[] m_moves;
+    private List<Coordinates> m_selection;
+    private List<Coordinates> m_destination;
+
+    @Setup
+    public void setUp() {
+        m_board = new Board();
+        m_board.loadFen(m_fen);
+        m_moves = new int[MoveGenerator.MAX_MOVES];
+        m_selection = new ArrayList<Coordinates>();
+        m_destination = new ArrayList<Coordinates>();
+        // a full history of quiet positions so foundRecentlyNTimes has to scan every entry
+        m_history = new BoardHistory();
+        Board board = new Board(m_board);
+        board.m_turnsSinceLastCapture = 1;
+        for (int i = 0; i < 100; i++) {
+            m_history.addBoard(board);
+        }
+    }
+
+    @Benchmark
+    public void getAllPossibleChessMoves(Blackhole blackhole) {
+        m_selection.clear();
+        m_destination.clear();
+        m_board.getAllPossibleChessMoves(m_selection, m_destination);
+        blackhole.consume(m_destination);
+    }
+
+    @Benchmark
+    public int generateLegalMoves() {
+        return m_board.generateLegalMoves(m_moves);
+    }
+
+    @Benchmark
+    public boolean isKingChecked() {
+        return m_board.isKingChecked(m_board.m_whiteTurn);
+    }
+
+    @Benchmark
+    public int getAdvantagePoints() {
+        return m_board.getAdvantagePoints();
+    }
+
+    @Benchmark
+    public Board copyBoard() {
+        return new Board(m_board);
+    }
+
+    @Benchmark
+    public boolean foundRecentlyNTimes() {
+        return m_history.foundRecentlyNTimes(m_board, 2);
+    }
+}
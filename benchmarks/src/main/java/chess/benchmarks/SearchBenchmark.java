@@ -0,0 +1,68 @@
+package chess.benchmarks;
+
+import chess.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Time for ChessAI to search a position to a fixed depth from an empty transposition table
+ * The time budget is effectively unlimited so every run searches the same tree
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+
+    @Param({Positions.START, Positions.KIWIPETE, Positions.MIDDLEGAME, Positions.ENDGAME})
+    public String m_fen;
+
+    @Param({"5"})
+    public int m_depth;
+
+    /** Switches of the selective search, e.g. -p m_nullMove=false,true to measure null move pruning alone */
+    @Param({"true"})
+    public boolean m_nullMove;
+
+    @Param({"true"})
+    public boolean m_reductions;
+
+    @Param({"true"})
+    public boolean m_futility;
+
+    @Param({"true"})
+    public boolean m_razoring;
+
+    private Board m_board;
+    private ChessAI m_ai;
+
+    @Setup
+    public void setUp() {
+        m_board = new Board();
+        m_board.loadFen(m_fen);
+        m_ai = new ChessAI(m_board, new BoardHistory(), 16);
+        m_ai.setMaxDepth(m_depth);
+        m_ai.setTimeBudget(Long.MAX_VALUE / 2000000);
+        m_ai.setNullMovePruning(m_nullMove);
+        m_ai.setLateMoveReductions(m_reductions);
+        m_ai.setFutilityPruning(m_futility);
+        m_ai.setRazoring(m_razoring);
+    }
+
+    @Setup(Level.Invocation)
+    public void clearTable() {
+        m_ai.clearTable();
+    }
+
+    @TearDown
+    public void tearDown() {
+        m_ai.shutdown();
+    }
+
+    @Benchmark
+    public SearchResult search() {
+        return m_ai.search();
+    }
+}
@@ -0,0 +1,209 @@
+package chess;
+
+/**
+ * Precomputed attack tables over 64-bit bitboards
+ * Squares are indexed row*COLS + col, so bit 0 is A8 and bit 63 is H1
+ * Rook and bishop attacks are looked up with magic bitboards: the occupied squares that can block the
+ * piece are multiplied by a magic number whose top bits index the attacks for exactly those blockers
+ * The magic numbers were found once by a random search (sparse random numbers from xorshift64*, tried until
+ * no two sets of blockers with different attacks share an index), the attack tables are built when the class loads
+ */
+public final class Bitboards {
+
+    public static final long[] KNIGHT_ATTACKS = new long[Board.SQUARES];
+    public static final long[] KING_ATTACKS = new long[Board.SQUARES];
+    /** Squares attacked by a pawn of the given colour, indexed by [colour][square] */
+    public static final long[][] PAWN_ATTACKS = new long[2][Board.SQUARES];
+
+    /** Row and column increments of the eight sliding directions (first four are rook directions) */
+    private static final int[][] DIRECTIONS = {
+        {-1, 0}, {0, 1}, {1, 0}, {0, -1}, {-1, -1}, {-1, 1}, {1, 1}, {1, -1}
+    };
+    /** Full ray from a square to the edge of the board, indexed by [direction][square] */
+    private static final long[][] RAYS = new long[DIRECTIONS.length][Board.SQUARES];
+    /** True if the direction walks towards higher square indices */
+    private static final boolean[] INCREASING = new boolean[DIRECTIONS.length];
+    /** Squares strictly between two squares on a common row, column or diagonal, indexed by [square][square] */
+    private static final long[][] BETWEEN = new long[Board.SQUARES][Board.SQUARES];
+    /** Whole row, column or diagonal through two aligned squares (edge to edge), indexed by [square][square] */
+    private static final long[][] LINE = new long[Board.SQUARES][Board.SQUARES];
+
+    // magic lookups of the rook (directions 0-3) and the bishop (directions 4-7), indexed by square:
+    // squares whose occupation can block the piece (the board edge never blocks), magic number,
+    // shift leaving one index bit per blocking square, and start of the square's attacks in the attack table
+    private static final long[] ROOK_MASKS = new long[Board.SQUARES];
+    private static final long[] ROOK_MAGICS = {
+        0x0480046281400010L, 0x80C0200010004000L, 0x8780200008300180L, 0x8880060800100080L,
+        0x2100030010080084L, 0x0100040001000802L, 0x0200040800810200L, 0x0580008002407100L,
+        0x1000800080400020L, 0x0080401000402001L, 0x800C802002100880L, 0x800A002200884010L,
+        0x2046002008108600L, 0x0222009002000804L, 0x100B000421001200L, 0x0240800100004080L,
+        0x4540008020408006L, 0x8010054020084002L, 0x7D10010100200040L, 0x1408008010000882L,
+        0x4408010005000810L, 0x001E008004000280L, 0x0230040001080210L, 0x0000020004004081L,
+        0x0100400080208001L, 0x1000842300400100L, 0x1060100080200082L, 0x3219004B00100020L,
+        0x9010080080800400L, 0x8440020080800400L, 0x6008010080800200L, 0x4123008200010044L,
+        0x0280002001400240L, 0x0220100040400020L, 0x0060801003802008L, 0x0008100080800800L,
+        0x0105000801001004L, 0x100B000803000400L, 0x0000024814001021L, 0x00408000C2802100L,
+        0x4C40004020808002L, 0x4410500420024000L, 0x00C0100020008080L, 0x0000100008008080L,
+        0x8002000804220011L, 0x0802000804010100L, 0x0243100201040008L, 0x0000009100420014L,
+        0x1000400280022480L, 0x0020200040100040L, 0x00A000100800C140L, 0x0410001408008080L,
+        0x0000080004008080L, 0x0100020004008080L, 0x0303000200040300L, 0x1480006104008200L,
+        0x00008002204A1101L, 0x1040090010224081L, 0x4300C0200011000DL, 0x8002041001002009L,
+        0x2005000800020411L, 0x110A008408100102L, 0x0006000108008402L, 0x0200002900884402L
+    };
+    private static final int[] ROOK_SHIFTS = new int[Board.SQUARES];
+    private static final int[] ROOK_OFFSETS = new int[Board.SQUARES];
+    private static final long[] ROOK_ATTACKS;
+    private static final long[] BISHOP_MASKS = new long[Board.SQUARES];
+    private static final long[] BISHOP_MAGICS = {
+        0x48081010008A2A80L, 0x000948110C0B2081L, 0x0944140400500000L, 0x4984104A00000101L,
+        0x4004030818283008L, 0x0206012462000121L, 0x1A02013008040001L, 0x0001008044200440L,
+        0x0000312208080880L, 0x0220021002009900L, 0x8080880801082000L, 0x000C11040080102AL,
+        0x1402440421000210L, 0x0010120802080A81L, 0x0080084202104028L, 0x1100002082082082L,
+        0x0008403429080820L, 0x8104868204040412L, 0x6424084043060030L, 0x1108000420401000L,
+        0x9004101202020240L, 0x0032400608200412L, 0x0001009610822080L, 0x0008403429080820L,
+        0x0008068340104200L, 0x0010102858090121L, 0x81004C0018080313L, 0x4048080004820002L,
+        0x000900401C004049L, 0x0009420121C1101CL, 0x4828504005040211L, 0x4828504005040211L,
+        0x0041041381202000L, 0x01008C1005601680L, 0x01D010900002040AL, 0x4040020080080080L,
+        0x4801080200802200L, 0x4801080200802200L, 0x0010046108108080L, 0x90409090810A0220L,
+        0x8004020242201020L, 0x8004020242201020L, 0x0202010028020480L, 0x0000041144000801L,
+        0x00002000A4021080L, 0x0504090045040200L, 0x8182041102094400L, 0x0550008100480101L,
+        0xC002080404040400L, 0x0382004108292000L, 0x12000100A8040020L, 0xA005020442088020L,
+        0x2000001102020300L, 0x000021E0420C8808L, 0x3060200484888400L, 0x01280101021A0802L,
+        0x1030820110010500L, 0x0080012608025800L, 0x0002810084008800L, 0x800080000C208800L,
+        0xA408002140028204L, 0x0010006020322084L, 0x0210401044110050L, 0x40106000A1160020L
+    };
+    private static final int[] BISHOP_SHIFTS = new int[Board.SQUARES];
+    private static final int[] BISHOP_OFFSETS = new int[Board.SQUARES];
+    private static final long[] BISHOP_ATTACKS;
+
+    static {
+        int[][] knightOffsets = {{-2,-1}, {-2,1}, {-1,-2}, {-1,2}, {1,-2}, {1,2}, {2,-1}, {2,1}};
+        for (int square = 0; square < Board.SQUARES; square++) {
+            int row = square / Board.COLS;
+            int col = square % Board.COLS;
+            for (int[] offset : knightOffsets) {
+                KNIGHT_ATTACKS[square] |= bit(row + offset[0], col + offset[1]);
+            }
+            for (int i = -1; i <= 1; i++) {
+                for (int j = -1; j <= 1; j++) {
+                    if (i != 0 || j != 0) KING_ATTACKS[square] |= bit(row + i, col + j);
+                }
+            }
+            PAWN_ATTACKS[Board.WHITE][square] = bit(row - 1, col - 1) | bit(row - 1, col + 1);
+            PAWN_ATTACKS[Board.BLACK][square] = bit(row + 1, col - 1) | bit(row + 1, col + 1);
+            for (int d = 0; d < DIRECTIONS.length; d++) {
+                int r = row + DIRECTIONS[d][0];
+                int c = col + DIRECTIONS[d][1];
+                while (onBoard(r, c)) {
+                    RAYS[d][square] |= bit(r, c);
+                    r += DIRECTIONS[d][0];
+                    c += DIRECTIONS[d][1];
+                }
+            }
+        }
+        for (int d = 0; d < DIRECTIONS.length; d++) {
+            INCREASING[d] = DIRECTIONS[d][0] * Board.COLS + DIRECTIONS[d][1] > 0;
+            int opposite = (d & 4) | ((d + 2) & 3);
+            for (int from = 0; from < Board.SQUARES; from++) {
+                long ray = RAYS[d][from];
+                while (ray != 0) {
+                    int to = Long.numberOfTrailingZeros(ray);
+                    BETWEEN[from][to] = RAYS[d][from] & ~RAYS[d][to] & ~(1L << to);
+                    LINE[from][to] = RAYS[d][from] | RAYS[opposite][from] | (1L << from);
+                    ray &= ray - 1;
+                }
+            }
+        }
+        ROOK_ATTACKS = initMagics(0, ROOK_MASKS, ROOK_MAGICS, ROOK_SHIFTS, ROOK_OFFSETS);
+        BISHOP_ATTACKS = initMagics(4, BISHOP_MASKS, BISHOP_MAGICS, BISHOP_SHIFTS, BISHOP_OFFSETS);
+    }
+
+    private Bitboards() {}
+
+    private static boolean onBoard(int row, int col) {
+        return row >= 0 && col >= 0 && row < Board.ROWS && col < Board.COLS;
+    }
+
+    /** Returns the bitboard with only the given square set (or empty if off the board) */
+    private static long bit(int row, int col) {
+        return onBoard(row, col) ? 1L << (row * Board.COLS + col) : 0L;
+    }
+
+    /** Builds the attack table of the slider whose four directions start at firstDirection, filling in
+     *  the blocking squares, shifts and offsets of every square, and checks that its magic numbers are perfect */
+    private static long[] initMagics(int firstDirection, long[] masks, long[] magics, int[] shifts, int[] offsets) {
+        int size = 0;
+        for (int square = 0; square < Board.SQUARES; square++) {
+            for (int d = firstDirection; d < firstDirection + 4; d++) {
+                long ray = RAYS[d][square];
+                if (ray == 0) continue;
+                // the last square of a ray is at the edge and cannot block anything behind it
+                long edge = INCREASING[d] ? Long.highestOneBit(ray) : Long.lowestOneBit(ray);
+                masks[square] |= ray & ~edge;
+            }
+            shifts[square] = Long.SIZE - Long.bitCount(masks[square]);
+            offsets[square] = size;
+            size += 1 << Long.bitCount(masks[square]);
+        }
+        long[] table = new long[size];
+        boolean[] filled = new boolean[size];
+        for (int square = 0; square < Board.SQUARES; square++) {
+            long mask = masks[square];
+            // every subset of the blocking squares, walked with the carry-rippler trick
+            long blockers = 0;
+            do {
+                long attacks = 0;
+                for (int d = firstDirection; d < firstDirection + 4; d++) {
+                    attacks |= rayAttacks(d, square, blockers);
+                }
+                int index = offsets[square] + (int) ((blockers * magics[square]) >>> shifts[square]);
+                if (filled[index] && table[index] != attacks) {
+                    throw new IllegalStateException("Magic number of square " + square + " is not perfect");
+                }
+                filled[index] = true;
+                table[index] = attacks;
+                blockers = (blockers - mask) & mask;
+            } while (blockers != 0);
+        }
+        return table;
+    }
+
+    /** Returns the attacks along one ray, stopping at (and including) the first occupied square */
+    private static long rayAttacks(int direction, int square, long occupied) {
+        long attacks = RAYS[direction][square];
+        long blockers = attacks & occupied;
+        if (blockers != 0) {
+            int blocker = INCREASING[direction] ? Long.numberOfTrailingZeros(blockers)
+                                                : 63 - Long.numberOfLeadingZeros(blockers);
+            attacks ^= RAYS[direction][blocker];
+        }
+        return attacks;
+    }
+
+    /** Returns the squares strictly between the two squares, or empty if they are not aligned */
+    public static long between(int square, int otherSquare) {
+        return BETWEEN[square][otherSquare];
+    }
+
+    /** Returns the row, column or diagonal through both squares, or empty if they are not aligned */
+    public static long line(int square, int otherSquare) {
+        return LINE[square][otherSquare];
+    }
+
+    /** Returns the squares a rook on the given square attacks given the occupied squares */
+    public static long rookAttacks(int square, long occupied) {
+        return ROOK_ATTACKS[ROOK_OFFSETS[square]
+                            + (int) (((occupied & ROOK_MASKS[square]) * ROOK_MAGICS[square]) >>> ROOK_SHIFTS[square])];
+    }
+
+    /** Returns the squares a bishop on the given square attacks given the occupied squares */
+    public static long bishopAttacks(int square, long occupied) {
+        return BISHOP_ATTACKS[BISHOP_OFFSETS[square]
+                              + (int) (((occupied & BISHOP_MASKS[square]) * BISHOP_MAGICS[square]) >>> BISHOP_SHIFTS[square])];
+    }
+
+    /** Returns the squares a queen on the given square attacks given the occupied squares */
+    public static long queenAttacks(int square, long occupied) {
+        return rookAttacks(square, occupied) | bishopAttacks(square, occupied);
+    }
+}
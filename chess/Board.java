@@ -9,27 +9,88 @@ public class Board {
 
     public static final byte ROWS = 8;
     public static final byte COLS = 8;
+    public static final byte SQUARES = ROWS * COLS;
+    public static final int WHITE = 0;
+    public static final int BLACK = 1;
+    /** Deepest number of moves that can be made (and unmade) on top of the game position */
+    public static final int MAX_PLY = 128;
+    public static final int CASTLING_WHITE_LEFT = 1;
+    public static final int CASTLING_WHITE_RIGHT = 2;
+    public static final int CASTLING_BLACK_LEFT = 4;
+    public static final int CASTLING_BLACK_RIGHT = 8;
+    /** Game phase with all knights, bishops, rooks and queens on the board (see Piece.getPhaseWeight) */
+    public static final int MAX_PHASE = 24;
+    /** FEN symbols of the white pieces indexed by Type ordinal */
+    private static final String FEN_SYMBOLS = "PRNBQK";
+
     public Coordinates m_enPassant;
     public boolean m_oneTurnSinceEnPassant;
     public boolean m_whiteTurn;
     public int m_turnsSinceLastCapture;
 
-    private Piece[][] m_grid;
-    private Map<Boolean, Map<Coordinates, Piece>> m_allPieces; 
-    private Map<Boolean, King> m_kings;
+    private Piece[] m_squares;
+    private long[][] m_pieceBitboards;
+    private long[] m_colourBitboards;
+    private King[] m_kings;
     private Set<Coordinates> m_validMoves;
+    /** Scratch buffer for the move generation behind the Set and List adapters and the game end checks */
+    private int[] m_moveBuffer;
     private Coordinates m_lastSelection;
     private Coordinates m_lastPlacement;
-    //private int m_advantagePoints;
+    private int m_midgamePoints;
+    private int m_endgamePoints;
+    private int m_phase;
+    private long m_key;
+    /** Zobrist key of the pawns alone, for the pawn table of the search */
+    private long m_pawnKey;
+    private UndoRecord[] m_undoStack;
+    private int m_ply;
+
+    /** Everything makeMove(int) changes that cannot be recomputed from the move itself */
+    private static class UndoRecord {
+        int m_move;
+        Piece m_movedPiece;
+        Piece m_captured;
+        int m_captureSquare;
+        Coordinates m_enPassant;
+        boolean m_oneTurnSinceEnPassant;
+        int m_turnsSinceLastCapture;
+        int m_castlingRights;
+        long m_key;
+        boolean m_firstMove;
+        Coordinates m_lastSelection;
+        Coordinates m_lastPlacement;
+        /** Pieces reused by promotions at this ply, indexed by colour*4 + (type ordinal - 1) */
+        Piece[] m_promotions;
+
+        /** Returns the piece a pawn evolves into, creating it the first time this ply needs it */
+        Piece getPromotedPiece(Board board, Type type, boolean isWhite) {
+            if (m_promotions == null) m_promotions = new Piece[8];
+            int index = colourIndex(isWhite)*4 + type.ordinal() - 1;
+            if (m_promotions[index] == null) {
+                m_promotions[index] = board.makeEvolvedPiece(Move.getPromotionSymbol(m_move), isWhite);
+            }
+            return m_promotions[index];
+        }
+    }
 
     /** Constructor for Board */
     public Board() {
-        m_grid = new Piece[ROWS][COLS];
-        m_allPieces = new HashMap<Boolean, Map<Coordinates, Piece>>();
-        m_allPieces.put(true, new HashMap<Coordinates, Piece>());
-        m_allPieces.put(false, new HashMap<Coordinates, Piece>());
-        m_kings = new HashMap<Boolean, King>();
+        m_squares = new Piece[SQUARES];
+        m_pieceBitboards = new long[2][Type.values().length];
+        m_colourBitboards = new long[2];
+        m_kings = new King[2];
         m_validMoves = new HashSet<Coordinates>();
+        m_moveBuffer = new int[MoveGenerator.MAX_MOVES];
+        m_undoStack = new UndoRecord[MAX_PLY];
+        for (int ply = 0; ply < MAX_PLY; ply++) {
+            m_undoStack[ply] = new UndoRecord();
+        }
+    }
+
+    /** Returns the bitboard index of the given colour (WHITE or BLACK) */
+    public static int colourIndex(boolean isWhite) {
+        return isWhite ? WHITE : BLACK;
     }
 
     /** Copies the other piece, only used in copy constructor */
@@ -53,8 +114,8 @@ public class Board {
                 piece = new Queen(this, otherPiece);
                 break;
             case KING:
-                m_kings.put(otherPiece.m_isWhite, new King(this, otherPiece));
-                piece = m_kings.get(otherPiece.m_isWhite);
+                piece = new King(this, otherPiece);
+                m_kings[colourIndex(otherPiece.m_isWhite)] = (King) piece;
                 break;
         }
         return piece;
@@ -67,15 +128,19 @@ public class Board {
         m_oneTurnSinceEnPassant = otherBoard.m_oneTurnSinceEnPassant;
         m_whiteTurn = otherBoard.m_whiteTurn;
         m_turnsSinceLastCapture = otherBoard.m_turnsSinceLastCapture;
-        //m_advantagePoints = otherBoard.m_advantagePoints;
+        m_midgamePoints = otherBoard.m_midgamePoints;
+        m_endgamePoints = otherBoard.m_endgamePoints;
+        m_phase = otherBoard.m_phase;
         m_lastSelection = otherBoard.m_lastSelection;
         m_lastPlacement = otherBoard.m_lastPlacement;
-        for (byte row = 0; row < ROWS; row++) {
-            for (byte col = 0; col < COLS; col++) {
-                Coordinates rc = new Coordinates(row, col);
-                Piece otherPiece = otherBoard.getPieceAtCoordinate(rc);
-                setPieceAtCoordinate(copyPiece(otherPiece), rc);
-            }
+        m_key = otherBoard.m_key;
+        m_pawnKey = otherBoard.m_pawnKey;
+        for (int colour = 0; colour < 2; colour++) {
+            m_pieceBitboards[colour] = otherBoard.m_pieceBitboards[colour].clone();
+        }
+        m_colourBitboards = otherBoard.m_colourBitboards.clone();
+        for (int square = 0; square < SQUARES; square++) {
+            m_squares[square] = copyPiece(otherBoard.m_squares[square]);
         }
     }
 
@@ -104,8 +169,8 @@ public class Board {
                     piece = new Queen(this, rc, isWhite);
                     break;
                 case 4:
-                    m_kings.put(isWhite, new King(this, rc, isWhite));
-                    piece = m_kings.get(isWhite);
+                    piece = new King(this, rc, isWhite);
+                    m_kings[colourIndex(isWhite)] = (King) piece;
                     break;
             }
         }
@@ -114,9 +179,22 @@ public class Board {
 
     /** Sets all the pieces back to starting position */
     public void init() {
-        m_allPieces.get(true).clear();
-        m_allPieces.get(false).clear();
-        m_kings.clear();
+        clear();
+        for (int square = 0; square < SQUARES; square++) {
+            Coordinates rc = Coordinates.of(square);
+            setPieceAtCoordinate(makeNewPiece(rc), rc);
+        }
+        m_key = computeKey();
+    }
+
+    /** Empties the board and resets the state of the game, white to move */
+    private void clear() {
+        Arrays.fill(m_squares, null);
+        for (int colour = 0; colour < 2; colour++) {
+            Arrays.fill(m_pieceBitboards[colour], 0L);
+            m_colourBitboards[colour] = 0L;
+            m_kings[colour] = null;
+        }
         m_lastSelection = null;
         m_lastPlacement = null;
         m_enPassant = null;
@@ -124,160 +202,480 @@ public class Board {
         m_validMoves.clear();
         m_whiteTurn = true;
         m_turnsSinceLastCapture = 0;
-        //m_advantagePoints = 0;
-        for (byte row = 0; row < ROWS; row++) {
-            for (byte col = 0; col < COLS; col++) {
-                Coordinates rc = new Coordinates(row, col);
-                setPieceAtCoordinate(makeNewPiece(rc), rc);
+        m_midgamePoints = 0;
+        m_endgamePoints = 0;
+        m_phase = 0;
+        m_pawnKey = 0;
+        m_ply = 0;
+    }
+
+    /** Sets up the position of the given FEN string (Forsyth-Edwards Notation)
+     *  The move number is optional and ignored, pawns on their starting row may still move two squares */
+    public void loadFen(String fen) {
+        String[] fields = fen.trim().split("\\s+");
+        if (fields.length < 4) throw new IllegalArgumentException("Incomplete FEN: " + fen);
+        clear();
+        int row = 0;
+        int col = 0;
+        for (char symbol : fields[0].toCharArray()) {
+            if (symbol == '/') {
+                row++;
+                col = 0;
+            } else if (symbol >= '1' && symbol <= '8') {
+                col += symbol - '0';
+            } else {
+                if (row >= ROWS || col >= COLS) throw new IllegalArgumentException("Too many squares in FEN: " + fen);
+                Coordinates rc = Coordinates.of(row, col);
+                setPieceAtCoordinate(makeFenPiece(symbol, rc), rc);
+                col++;
             }
         }
+        if (m_kings[WHITE] == null || m_kings[BLACK] == null) {
+            throw new IllegalArgumentException("FEN needs one king of each colour: " + fen);
+        }
+        m_whiteTurn = fields[1].equals("w");
+        // a right only counts with the king on its home square and the rook in its corner, as move generation assumes
+        m_kings[WHITE].m_canLeftCastle = fields[2].contains("Q") && canCastleWith(true, (ROWS - 1) * COLS);
+        m_kings[WHITE].m_canRightCastle = fields[2].contains("K") && canCastleWith(true, SQUARES - 1);
+        m_kings[BLACK].m_canLeftCastle = fields[2].contains("q") && canCastleWith(false, 0);
+        m_kings[BLACK].m_canRightCastle = fields[2].contains("k") && canCastleWith(false, COLS - 1);
+        if (!fields[3].equals("-")) {
+            m_enPassant = Coordinates.of(ROWS - (fields[3].charAt(1) - '0'), fields[3].charAt(0) - 'a');
+        }
+        m_turnsSinceLastCapture = (fields.length > 4) ? Integer.parseInt(fields[4]) : 0;
+        m_key = computeKey();
     }
 
-    /** Get the points for the state of the board (positive means white is winning) */
-    public int getAdvantagePoints() {
-        //return m_advantagePoints;
-        int advantagePoints = 0;
-        List<Piece> allPieces = new ArrayList<Piece>();
-        allPieces.addAll(m_allPieces.get(false).values());
-        allPieces.addAll(m_allPieces.get(true).values());
-        for (Piece piece : allPieces) {
-            advantagePoints += piece.getPowerValue();
+    /** Returns true if the king of the colour is on its home square and its rook on the given corner square */
+    private boolean canCastleWith(boolean isWhite, int cornerSquare) {
+        int homeSquare = (isWhite ? (ROWS - 1) * COLS : 0) + 4;
+        Piece rook = m_squares[cornerSquare];
+        return m_kings[colourIndex(isWhite)].getSquare() == homeSquare
+            && rook != null && rook.m_type == Type.ROOK && rook.m_isWhite == isWhite;
+    }
+
+    /** Returns the position as a FEN string that loadFen(String) reads back into the same position
+     *  A pawn may move two squares exactly when it is on its starting row, so FEN holds that too;
+     *  the move number is not kept by the board and written as 1 */
+    public String toFen() {
+        StringBuilder fen = new StringBuilder();
+        for (int row = 0; row < ROWS; row++) {
+            int empty = 0;
+            for (int col = 0; col < COLS; col++) {
+                Piece piece = m_squares[row*COLS + col];
+                if (piece == null) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) fen.append(empty);
+                empty = 0;
+                char symbol = FEN_SYMBOLS.charAt(piece.m_type.ordinal());
+                fen.append(piece.m_isWhite ? symbol : Character.toLowerCase(symbol));
+            }
+            if (empty > 0) fen.append(empty);
+            if (row < ROWS - 1) fen.append('/');
+        }
+        fen.append(m_whiteTurn ? " w " : " b ");
+        int rights = getCastlingRights();
+        if ((rights & CASTLING_WHITE_RIGHT) != 0) fen.append('K');
+        if ((rights & CASTLING_WHITE_LEFT) != 0) fen.append('Q');
+        if ((rights & CASTLING_BLACK_RIGHT) != 0) fen.append('k');
+        if ((rights & CASTLING_BLACK_LEFT) != 0) fen.append('q');
+        if (rights == 0) fen.append('-');
+        fen.append(' ').append((m_enPassant == null) ? "-" : Move.squareName(m_enPassant.index()));
+        fen.append(' ').append(m_turnsSinceLastCapture).append(" 1");
+        return fen.toString();
+    }
+
+    /** A factory for the piece of the given FEN symbol (upper case for white) */
+    private Piece makeFenPiece(char symbol, Coordinates rc) {
+        boolean isWhite = Character.isUpperCase(symbol);
+        switch (Character.toUpperCase(symbol)) {
+            case 'P':
+                Pawn pawn = new Pawn(this, rc, isWhite);
+                pawn.m_firstMove = rc.m_row == (isWhite ? ROWS - 2 : 1);
+                return pawn;
+            case 'N':
+                return new Knight(this, rc, isWhite);
+            case 'B':
+                return new Bishop(this, rc, isWhite);
+            case 'R':
+                return new Rook(this, rc, isWhite);
+            case 'Q':
+                return new Queen(this, rc, isWhite);
+            case 'K':
+                King king = new King(this, rc, isWhite);
+                m_kings[colourIndex(isWhite)] = king;
+                return king;
+            default:
+                throw new IllegalArgumentException("Unknown piece in FEN: " + symbol);
         }
-        return advantagePoints;
+    }
+
+    /** Computes the Zobrist key of the position from scratch
+     *  (pieces, player to move, castling rights and en passant column) */
+    public long computeKey() {
+        long key = 0;
+        for (int colour = 0; colour < 2; colour++) {
+            for (int type = 0; type < m_pieceBitboards[colour].length; type++) {
+                long pieces = m_pieceBitboards[colour][type];
+                while (pieces != 0) {
+                    key ^= Zobrist.PIECES[colour][type][Long.numberOfTrailingZeros(pieces)];
+                    pieces &= pieces - 1;
+                }
+            }
+        }
+        if (!m_whiteTurn) key ^= Zobrist.BLACK_TO_MOVE;
+        key ^= Zobrist.CASTLING[getCastlingRights()];
+        if (m_enPassant != null) key ^= Zobrist.EN_PASSANT[m_enPassant.m_col];
+        return key;
+    }
+
+    /** Returns the Zobrist key of the position, kept up to date by every change to the board */
+    public long getKey() {
+        return m_key;
+    }
+
+    /** Returns the Zobrist key of the pawns of both colours, kept up to date by every pawn placed or removed
+     *  It only changes on pawn moves, captures of pawns and promotions */
+    public long getPawnKey() {
+        return m_pawnKey;
+    }
+
+    /** Get the points for the state of the board (positive means white is winning)
+     *  Blends the middlegame and endgame points by how much material is left, both kept up to date
+     *  by every piece placed or removed */
+    public int getAdvantagePoints() {
+        int phase = Math.min(m_phase, MAX_PHASE);
+        return (m_midgamePoints*phase + m_endgamePoints*(MAX_PHASE - phase)) / MAX_PHASE;
+    }
+
+    /** Returns the game phase, from MAX_PHASE at the start down to 0 with only kings and pawns left */
+    public int getPhase() {
+        return m_phase;
     }
     
     /** Get the chess piece at given coordinate */
     public Piece getPieceAtCoordinate(Coordinates rc) {
-        return m_grid[rc.m_row][rc.m_col];
+        return m_squares[rc.index()];
+    }
+
+    /** Get the chess piece at given square index */
+    public Piece getPieceAtSquare(int square) {
+        return m_squares[square];
+    }
+
+    /** Returns the bitboard of the given coloured pieces of the given type */
+    public long getPieces(boolean isWhite, Type type) {
+        return m_pieceBitboards[colourIndex(isWhite)][type.ordinal()];
+    }
+
+    /** Returns the bitboard of all the given coloured pieces */
+    public long getPieces(boolean isWhite) {
+        return m_colourBitboards[colourIndex(isWhite)];
+    }
+
+    /** Returns the bitboard of all occupied squares */
+    public long getOccupied() {
+        return m_colourBitboards[WHITE] | m_colourBitboards[BLACK];
+    }
+
+    /** Flips the bit of the given piece at the given square in the bitboards and the keys */
+    private void toggleBitboards(Piece piece, int square) {
+        long bit = 1L << square;
+        int colour = colourIndex(piece.m_isWhite);
+        int type = piece.m_type.ordinal();
+        m_pieceBitboards[colour][type] ^= bit;
+        m_colourBitboards[colour] ^= bit;
+        m_key ^= Zobrist.PIECES[colour][type][square];
+        if (piece.m_type == Type.PAWN) m_pawnKey ^= Zobrist.PIECES[colour][type][square];
+    }
+
+    /** Puts the piece on the given empty square */
+    private void placePiece(Piece piece, int square) {
+        m_squares[square] = piece;
+        toggleBitboards(piece, square);
+        piece.m_rc = Coordinates.of(square);
+        m_midgamePoints += piece.getMidgameValue(square);
+        m_endgamePoints += piece.getEndgameValue(square);
+        m_phase += piece.getPhaseWeight();
+    }
+
+    /** Takes the piece off the given occupied square */
+    private void removePiece(int square) {
+        Piece piece = m_squares[square];
+        toggleBitboards(piece, square);
+        m_squares[square] = null;
+        m_midgamePoints -= piece.getMidgameValue(square);
+        m_endgamePoints -= piece.getEndgameValue(square);
+        m_phase -= piece.getPhaseWeight();
+    }
+
+    /** Moves the piece of one square onto another empty square */
+    private void movePiece(int startSquare, int finalSquare) {
+        Piece piece = m_squares[startSquare];
+        removePiece(startSquare);
+        placePiece(piece, finalSquare);
     }
 
     /** Sets the chess piece at given coordinate (and removing previous piece there)
      *  Pass in null to new piece to remove any piece at given coordinate */
     public void setPieceAtCoordinate(Piece newPiece, Coordinates rc) {
-        Piece piece = getPieceAtCoordinate(rc);
-        if (piece != null) m_allPieces.get(piece.m_isWhite).remove(rc);
-        m_grid[rc.m_row][rc.m_col] = newPiece;
-        if (newPiece != null) {
-            m_allPieces.get(newPiece.m_isWhite).put(rc, newPiece);
-            newPiece.m_rc = rc;
-        }
+        int square = rc.index();
+        if (m_squares[square] != null) removePiece(square);
+        if (newPiece != null) placePiece(newPiece, square);
     }
 
     /** Returns set of all coordinates that the selected piece can move to
      *  Takes into account player will be checked or if pieces are in the way */
     public Set<Coordinates> getAllValidMoves(Coordinates rc) {
         m_validMoves.clear();
-        getPieceAtCoordinate(rc).getValidMoves(m_validMoves, true);
+        addValidMoves(rc.index(), m_validMoves);
         return m_validMoves;
     }
 
+    /** Adds the final coordinates of every legal move of the piece on the given square into validMoves
+     *  Only the player to move has legal moves */
+    public void addValidMoves(int square, Set<Coordinates> validMoves) {
+        int count = MoveGenerator.generateLegalMoves(this, m_moveBuffer);
+        for (int i = 0; i < count; i++) {
+            if (Move.getStart(m_moveBuffer[i]) == square) validMoves.add(Coordinates.of(Move.getFinal(m_moveBuffer[i])));
+        }
+    }
+
+    /** Writes all legal moves of the player to move into moves (see MoveGenerator) and returns how many there are */
+    public int generateLegalMoves(int[] moves) {
+        return MoveGenerator.generateLegalMoves(this, moves);
+    }
+
+    /** Writes the legal captures and queen promotions of the player to move into moves and returns how many there are */
+    public int generateLegalCaptures(int[] moves) {
+        return MoveGenerator.generateLegalCaptures(this, moves);
+    }
+
     /** Checks if the given coloured king is under check */
     public boolean isKingChecked(boolean isWhite) {
-        King currKing = m_kings.get(isWhite);
-        List<Piece> pieces = new ArrayList<Piece>(m_allPieces.get(!isWhite).values());
-        for (Piece piece : pieces) {
-            Set<Coordinates> validMoves = new HashSet<Coordinates>();
-            piece.getValidMoves(validMoves, false);
-            if (validMoves.contains(currKing.m_rc)) return true;
-        }
-        return false;
+        long king = getPieces(isWhite, Type.KING);
+        return king != 0 && isSquareAttacked(Long.numberOfTrailingZeros(king), !isWhite);
     }
 
-    /** Moves the rook on the other side of king when castling
-     *  Only used in moveSelectedPiece(Coordinates) */
-    private void castlingRook(int row, boolean onTheRight) {
-        int factor = onTheRight ? 1 : 0;
-        Coordinates oldRC = new Coordinates(row, (COLS-1)*factor);
-        Piece rook = getPieceAtCoordinate(oldRC);
-        Coordinates newRC = new Coordinates(row, 2*factor + 3);
-        setPieceAtCoordinate(rook, newRC);
-        setPieceAtCoordinate(null, oldRC);
+    /** Checks if any piece of the given colour attacks the square
+     *  Looks outward from the square for knights, kings and pawns and along the rays for sliding pieces */
+    public boolean isSquareAttacked(int square, boolean byWhite) {
+        return isSquareAttacked(square, byWhite, getOccupied());
     }
 
-    /** Prevents castling with given rook after rook is moved
-     *  Only used in updateWhenMoved */
-    public void restrictCastling(boolean isWhite, boolean isRight) {
-        if (isRight) {
-            m_kings.get(isWhite).m_canRightCastle = false;
-        } else {
-            m_kings.get(isWhite).m_canLeftCastle = false;
+    /** Checks if any piece of the given colour attacks the square if only the given squares were occupied
+     *  (used to see through a king that moves away from a sliding piece) */
+    public boolean isSquareAttacked(int square, boolean byWhite, long occupied) {
+        int colour = colourIndex(byWhite);
+        long[] pieces = m_pieceBitboards[colour];
+        if ((Bitboards.KNIGHT_ATTACKS[square] & pieces[Type.KNIGHT.ordinal()]) != 0) return true;
+        if ((Bitboards.KING_ATTACKS[square] & pieces[Type.KING.ordinal()]) != 0) return true;
+        if ((Bitboards.PAWN_ATTACKS[1 - colour][square] & pieces[Type.PAWN.ordinal()]) != 0) return true;
+        long queens = pieces[Type.QUEEN.ordinal()];
+        if ((Bitboards.rookAttacks(square, occupied) & (pieces[Type.ROOK.ordinal()] | queens)) != 0) return true;
+        return (Bitboards.bishopAttacks(square, occupied) & (pieces[Type.BISHOP.ordinal()] | queens)) != 0;
+    }
+
+    /** Returns the bitboard of the pieces of the given colour attacking the square if only the given squares were occupied */
+    public long getAttackers(int square, boolean byWhite, long occupied) {
+        int colour = colourIndex(byWhite);
+        long[] pieces = m_pieceBitboards[colour];
+        long queens = pieces[Type.QUEEN.ordinal()];
+        return (Bitboards.KNIGHT_ATTACKS[square] & pieces[Type.KNIGHT.ordinal()])
+             | (Bitboards.KING_ATTACKS[square] & pieces[Type.KING.ordinal()])
+             | (Bitboards.PAWN_ATTACKS[1 - colour][square] & pieces[Type.PAWN.ordinal()])
+             | (Bitboards.rookAttacks(square, occupied) & (pieces[Type.ROOK.ordinal()] | queens))
+             | (Bitboards.bishopAttacks(square, occupied) & (pieces[Type.BISHOP.ordinal()] | queens));
+    }
+
+    /** Returns the castling rights of both kings packed into the bits of CASTLING_* */
+    public int getCastlingRights() {
+        int rights = 0;
+        King white = m_kings[WHITE];
+        King black = m_kings[BLACK];
+        if (white != null && white.m_canLeftCastle) rights |= CASTLING_WHITE_LEFT;
+        if (white != null && white.m_canRightCastle) rights |= CASTLING_WHITE_RIGHT;
+        if (black != null && black.m_canLeftCastle) rights |= CASTLING_BLACK_LEFT;
+        if (black != null && black.m_canRightCastle) rights |= CASTLING_BLACK_RIGHT;
+        return rights;
+    }
+
+    /** Restores the castling rights of both kings from the bits of CASTLING_* */
+    private void setCastlingRights(int rights) {
+        King white = m_kings[WHITE];
+        King black = m_kings[BLACK];
+        if (white != null) {
+            white.m_canLeftCastle = (rights & CASTLING_WHITE_LEFT) != 0;
+            white.m_canRightCastle = (rights & CASTLING_WHITE_RIGHT) != 0;
+        }
+        if (black != null) {
+            black.m_canLeftCastle = (rights & CASTLING_BLACK_LEFT) != 0;
+            black.m_canRightCastle = (rights & CASTLING_BLACK_RIGHT) != 0;
         }
     }
 
-    /** Moves the piece used for both actual move and validity check move
-     *  Sets member variables for actual move */
-    public Piece moveSelectedPiece(Coordinates startRC, Coordinates finalRC, boolean actualMove) {
-        Piece pieceToRemove = getPieceAtCoordinate(finalRC);
-        Piece piece = getPieceAtCoordinate(startRC);
-        setPieceAtCoordinate(null, startRC);
-        setPieceAtCoordinate(piece, finalRC);
-        if (actualMove) piece.updateWhenMoved();
-        
-        // if castling occurs
-        if (piece.m_type == Type.KING) {
-            if (startRC.m_col - finalRC.m_col == 2) {
-                castlingRook(finalRC.m_row, false);
-            } else if (finalRC.m_col - startRC.m_col == 2) {
-                castlingRook(finalRC.m_row, true);
-            }
+    /** Prevents castling with the rook of the given corner square once anything moves from or onto it */
+    private void restrictCastling(int square) {
+        if (square == 0 && m_kings[BLACK] != null) m_kings[BLACK].m_canLeftCastle = false;
+        else if (square == COLS - 1 && m_kings[BLACK] != null) m_kings[BLACK].m_canRightCastle = false;
+        else if (square == SQUARES - COLS && m_kings[WHITE] != null) m_kings[WHITE].m_canLeftCastle = false;
+        else if (square == SQUARES - 1 && m_kings[WHITE] != null) m_kings[WHITE].m_canRightCastle = false;
+    }
+
+    /** Returns true if the given move takes a pawn to the end of the board */
+    public boolean isPromotion(int move) {
+        Piece piece = m_squares[Move.getStart(move)];
+        int row = Move.getFinal(move) / COLS;
+        return piece.m_type == Type.PAWN && (row == 0 || row == ROWS - 1);
+    }
+
+    /** Plays the move and stores everything needed to take it back in the given undo record
+     *  The promotion of the move (if any) is taken from the undo record's own pieces */
+    private void applyMove(int move, UndoRecord undo) {
+        int startSquare = Move.getStart(move);
+        int finalSquare = Move.getFinal(move);
+        Piece piece = m_squares[startSquare];
+        undo.m_move = move;
+        undo.m_movedPiece = piece;
+        undo.m_enPassant = m_enPassant;
+        undo.m_oneTurnSinceEnPassant = m_oneTurnSinceEnPassant;
+        undo.m_turnsSinceLastCapture = m_turnsSinceLastCapture;
+        undo.m_castlingRights = getCastlingRights();
+        undo.m_key = m_key;
+        undo.m_lastSelection = m_lastSelection;
+        undo.m_lastPlacement = m_lastPlacement;
+
+        // if en passant occurs the captured pawn is beside the start square
+        int captureSquare = finalSquare;
+        if (piece.m_type == Type.PAWN && m_enPassant != null && finalSquare == m_enPassant.index()) {
+            captureSquare = (startSquare / COLS) * COLS + finalSquare % COLS;
         }
+        Piece captured = m_squares[captureSquare];
+        undo.m_captured = captured;
+        undo.m_captureSquare = captureSquare;
+        if (captured != null) removePiece(captureSquare);
+        removePiece(startSquare);
+        placePiece(piece, finalSquare);
 
-        // if en passant occurs
-        if (m_enPassant != null) {
-            if (m_oneTurnSinceEnPassant) {
-                m_oneTurnSinceEnPassant = false;
-            } else {
-                int row = (m_enPassant.m_row == 2) ? 3 : ROWS - 4;
-                Coordinates rc = new Coordinates(row, m_enPassant.m_col);
-                if (piece.m_type == Type.PAWN && finalRC.equals(m_enPassant)) {
-                    pieceToRemove = getPieceAtCoordinate(rc);
-                    setPieceAtCoordinate(null, rc);
-                }
-                if (actualMove) m_enPassant = null;
+        if (m_enPassant != null) m_key ^= Zobrist.EN_PASSANT[m_enPassant.m_col];
+        m_enPassant = null;
+        m_oneTurnSinceEnPassant = false;
+        if (piece.m_type == Type.PAWN) {
+            Pawn pawn = (Pawn) piece;
+            undo.m_firstMove = pawn.m_firstMove;
+            pawn.m_firstMove = false;
+            if (Math.abs(finalSquare - startSquare) == 2*COLS) {
+                m_enPassant = Coordinates.of((startSquare + finalSquare) / 2);
+                m_key ^= Zobrist.EN_PASSANT[m_enPassant.m_col];
             }
-        } 
-        
-        if (actualMove) {
-            m_lastSelection = startRC;
-            m_lastPlacement = finalRC;
-            m_whiteTurn = !m_whiteTurn;
-            m_turnsSinceLastCapture++;
-            //m_advantagePoints += (piece.getPositionValue(finalRC) - piece.getPositionValue(startRC));
-            if (pieceToRemove != null) {
-                m_turnsSinceLastCapture = 0;
-                //m_advantagePoints -= pieceToRemove.getPowerValue();
+            Type promotion = Move.getPromotion(move);
+            if (promotion != null) {
+                removePiece(finalSquare);
+                placePiece(undo.getPromotedPiece(this, promotion, piece.m_isWhite), finalSquare);
+            }
+        } else if (piece.m_type == Type.KING) {
+            King king = (King) piece;
+            king.m_canLeftCastle = false;
+            king.m_canRightCastle = false;
+            // if castling occurs the rook jumps to the other side of the king
+            if (finalSquare - startSquare == 2) {
+                movePiece(startSquare + 3, startSquare + 1);
+            } else if (startSquare - finalSquare == 2) {
+                movePiece(startSquare - 4, startSquare - 1);
             }
         }
-        return pieceToRemove;
+        restrictCastling(startSquare);
+        restrictCastling(finalSquare);
+        m_key ^= Zobrist.CASTLING[undo.m_castlingRights] ^ Zobrist.CASTLING[getCastlingRights()];
+
+        if (captured != null || piece.m_type == Type.PAWN) {
+            m_turnsSinceLastCapture = 0;
+        } else {
+            m_turnsSinceLastCapture++;
+        }
+        m_lastSelection = Coordinates.of(startSquare);
+        m_lastPlacement = Coordinates.of(finalSquare);
+        m_whiteTurn = !m_whiteTurn;
+        m_key ^= Zobrist.BLACK_TO_MOVE;
     }
 
+    /** Returns true if the position already occurred since the first move still on the undo stack
+     *  Only positions with the same player to move and no capture or pawn move in between are compared */
+    public boolean isRepetition() {
+        for (int ply = m_ply - 2; ply >= 0 && m_ply - ply <= m_turnsSinceLastCapture; ply -= 2) {
+            if (m_undoStack[ply].m_key == m_key) return true;
+        }
+        return false;
+    }
 
-    /** Moves the rook on the other side of king when castling
-     *  Only used in moveSelectedPiece(Coordinates) */
-    private void uncastlingRook(int row, boolean onTheRight) {
-        int factor = onTheRight ? 1 : 0;
-        Coordinates oldRC = new Coordinates(row, 2*factor + 3);
-        Piece rook = getPieceAtCoordinate(oldRC);
-        Coordinates newRC = new Coordinates(row, (COLS-1)*factor);
-        setPieceAtCoordinate(rook, newRC);
-        setPieceAtCoordinate(null, oldRC);
+    /** Plays a (pseudo-legal) move that can be taken back with unmakeMove()
+     *  Does not allocate, so it is used by the search and by validity checks */
+    public void makeMove(int move) {
+        applyMove(move, m_undoStack[m_ply++]);
     }
 
-    /** Resets the board back to start of turn during validity checks */
-    public void resetBoardToStartOfTurn(Piece pieceRemoved, Coordinates startRC, Coordinates finalRC) {
-        Piece piece = getPieceAtCoordinate(finalRC);
-        setPieceAtCoordinate(null, finalRC);
-        setPieceAtCoordinate(piece, startRC);
-        if (pieceRemoved != null) setPieceAtCoordinate(pieceRemoved, pieceRemoved.m_rc);
+    /** Takes back the last move played by makeMove(int) */
+    public void unmakeMove() {
+        UndoRecord undo = m_undoStack[--m_ply];
+        int startSquare = Move.getStart(undo.m_move);
+        int finalSquare = Move.getFinal(undo.m_move);
+        Piece piece = undo.m_movedPiece;
+        m_whiteTurn = !m_whiteTurn;
 
-        // undo castling rook
         if (piece.m_type == Type.KING) {
-            if (startRC.m_col - finalRC.m_col == 2) {
-                uncastlingRook(finalRC.m_row, false);
-            } else if (finalRC.m_col - startRC.m_col == 2) {
-                uncastlingRook(finalRC.m_row, true);
+            if (finalSquare - startSquare == 2) {
+                movePiece(startSquare + 1, startSquare + 3);
+            } else if (startSquare - finalSquare == 2) {
+                movePiece(startSquare - 1, startSquare - 4);
             }
+        } else if (piece.m_type == Type.PAWN) {
+            ((Pawn) piece).m_firstMove = undo.m_firstMove;
         }
+        removePiece(finalSquare);
+        placePiece(piece, startSquare);
+        if (undo.m_captured != null) placePiece(undo.m_captured, undo.m_captureSquare);
+
+        m_enPassant = undo.m_enPassant;
+        m_oneTurnSinceEnPassant = undo.m_oneTurnSinceEnPassant;
+        m_turnsSinceLastCapture = undo.m_turnsSinceLastCapture;
+        setCastlingRights(undo.m_castlingRights);
+        m_key = undo.m_key;
+        m_lastSelection = undo.m_lastSelection;
+        m_lastPlacement = undo.m_lastPlacement;
+    }
+
+    /** Passes the turn to the other player without moving (for null move pruning), taken back with unmakeNullMove()
+     *  The count of turns since the last capture starts over so repetitions are not looked for across the pass */
+    public void makeNullMove() {
+        UndoRecord undo = m_undoStack[m_ply++];
+        undo.m_move = Move.NONE;
+        undo.m_enPassant = m_enPassant;
+        undo.m_oneTurnSinceEnPassant = m_oneTurnSinceEnPassant;
+        undo.m_turnsSinceLastCapture = m_turnsSinceLastCapture;
+        undo.m_key = m_key;
+        if (m_enPassant != null) m_key ^= Zobrist.EN_PASSANT[m_enPassant.m_col];
+        m_enPassant = null;
+        m_oneTurnSinceEnPassant = false;
+        m_turnsSinceLastCapture = 0;
+        m_whiteTurn = !m_whiteTurn;
+        m_key ^= Zobrist.BLACK_TO_MOVE;
+    }
+
+    /** Takes back the pass played by makeNullMove() */
+    public void unmakeNullMove() {
+        UndoRecord undo = m_undoStack[--m_ply];
+        m_whiteTurn = !m_whiteTurn;
+        m_enPassant = undo.m_enPassant;
+        m_oneTurnSinceEnPassant = undo.m_oneTurnSinceEnPassant;
+        m_turnsSinceLastCapture = undo.m_turnsSinceLastCapture;
+        m_key = undo.m_key;
+    }
+
+    /** Moves the selected piece for an actual move of the game */
+    public void moveSelectedPiece(Coordinates startRC, Coordinates finalRC) {
+        applyMove(Move.encode(startRC, finalRC), m_undoStack[m_ply]);
     }
 
     /** Returns true if the last moved piece is a pawn that reached the end of the board */
@@ -287,57 +685,61 @@ public class Board {
             && (m_lastPlacement.m_row == 0 || m_lastPlacement.m_row == ROWS - 1);
     }
 
-    /** Given a character input, evolves the pawn into the selected piece */
-    public void evolvePawn(char newPiece) {
+    /** A factory for the piece a pawn evolves into given its character (R, N, B or Q) */
+    private Piece makeEvolvedPiece(char newPiece, boolean isWhite) {
         Piece piece = null;
         switch (newPiece) {
             case 'R':
-                piece = new Rook(this, m_lastPlacement, !m_whiteTurn);
+                piece = new Rook(this, m_lastPlacement, isWhite);
                 break;
             case 'N':
-                piece = new Knight(this, m_lastPlacement, !m_whiteTurn);
+                piece = new Knight(this, m_lastPlacement, isWhite);
                 break;
             case 'B':
-                piece = new Bishop(this, m_lastPlacement, !m_whiteTurn);
+                piece = new Bishop(this, m_lastPlacement, isWhite);
                 break;
             case 'Q':
-                piece = new Queen(this, m_lastPlacement, !m_whiteTurn);
+                piece = new Queen(this, m_lastPlacement, isWhite);
                 break;
         }
-        setPieceAtCoordinate(piece, m_lastPlacement);
+        return piece;
     }
 
-    /** Checks if the opponent has no valid moves left */
-    private boolean noValidMovesLeft(boolean isWhite) {
-        List<Piece> pieces = new ArrayList<Piece>(m_allPieces.get(isWhite).values());
-        for (Piece piece : pieces) {
-            Set<Coordinates> validMoves = new HashSet<Coordinates>();
-            piece.getValidMoves(validMoves, true);
-            if (!validMoves.isEmpty()) return false;
-        }
-        return true;
+    /** Given a character input, evolves the pawn into the selected piece */
+    public void evolvePawn(char newPiece) {
+        setPieceAtCoordinate(makeEvolvedPiece(newPiece, !m_whiteTurn), m_lastPlacement);
+    }
+
+    /** Checks if the player to move has no valid moves left */
+    private boolean noValidMovesLeft() {
+        return MoveGenerator.generateLegalMoves(this, m_moveBuffer) == 0;
     }
 
     /** Checks if the current player has won */
     public boolean hasLost() {
-        return (isKingChecked(m_whiteTurn) && noValidMovesLeft(m_whiteTurn));
+        return (isKingChecked(m_whiteTurn) && noValidMovesLeft());
     }
 
     /** Checks if the game is in a state of a draw */
     public boolean isDraw() {
-        return (m_turnsSinceLastCapture >= 50 || noValidMovesLeft(m_whiteTurn));
+        return (reachedTurnLimit() || noValidMovesLeft());
+    }
+
+    /** Checks if too many turns passed without a capture or pawn move (a draw even if moves are left) */
+    public boolean reachedTurnLimit() {
+        return m_turnsSinceLastCapture >= 50;
     }
 
-    /** Gets all possible chess moves for every piece on the board */
+    /** Gets all possible chess moves for every piece on the board
+     *  A pawn reaching the end is listed once (the piece it evolves into is chosen separately) */
     public void getAllPossibleChessMoves(List<Coordinates> selection, List<Coordinates> destination) {
-        List<Piece> pieces = new ArrayList<Piece>(m_allPieces.get(m_whiteTurn).values());
-        for (Piece piece : pieces) {
-            Set<Coordinates> validMoves = new HashSet<Coordinates>();
-            piece.getValidMoves(validMoves, true);
-            for (Coordinates rc : validMoves) {
-                selection.add(piece.m_rc);
-                destination.add(rc);
-            }
+        int count = MoveGenerator.generateLegalMoves(this, m_moveBuffer);
+        for (int i = 0; i < count; i++) {
+            int move = m_moveBuffer[i];
+            Type promotion = Move.getPromotion(move);
+            if (promotion != null && promotion != Type.QUEEN) continue;
+            selection.add(Coordinates.of(Move.getStart(move)));
+            destination.add(Coordinates.of(Move.getFinal(move)));
         }
     }
 
@@ -346,16 +748,7 @@ public class Board {
         if (obj == null) return false;
         if (!(obj instanceof Board)) return false;
         Board board = (Board) obj;
-        for (int row = 0; row < ROWS; row++) {
-            for (int col = 0; col < COLS; col++) {
-                Coordinates rc = new Coordinates(row, col);
-                Piece piece1 = getPieceAtCoordinate(rc);
-                Piece piece2 = board.getPieceAtCoordinate(rc);
-                if (piece1 == null && piece2 != null) return false;
-                if (piece1 != null && !piece1.equals(piece2)) return false;
-            }
-        }
-        return true;
+        return Arrays.deepEquals(m_pieceBitboards, board.m_pieceBitboards);
     }
 
     /** Paints the board (see comment for GameMain class for design) */
@@ -371,7 +764,7 @@ public class Board {
         for (byte row = 0; row < ROWS; row++) {
             System.out.print((ROWS - row) + " |");
             for (byte col = 0; col < COLS; col++) {
-                Coordinates rc = new Coordinates(row, col);
+                Coordinates rc = Coordinates.of(row, col);
                 char cellPadding = ' ';
                 if (markValidMoves && m_validMoves.contains(rc)) {
                     cellPadding = '-';
@@ -1,34 +1,49 @@
 package chess;
 
-import java.util.*;
-
+/**
+ * Keys of the positions of the game since the last capture or pawn move
+ * Positions before such a move can never come back, so they are dropped
+ */
 public class BoardHistory {
-    
-    private static final byte CAPACITY = 40;
-    
-    private List<Board> m_history;
+
+    private static final int CAPACITY = 128;
+
+    private long[] m_keys;
+    private int m_start;
+    private int m_size;
 
     public BoardHistory() {
-        m_history = new ArrayList<Board>();
+        m_keys = new long[CAPACITY];
     }
 
+    /** Records the position of the board (called before each move of the game) */
     public void addBoard(Board board) {
-        m_history.add(board);
-        while (m_history.size() > CAPACITY) {
-            m_history.remove(0);
+        if (board.m_turnsSinceLastCapture == 0) clear();
+        if (m_size == CAPACITY) {
+            m_start = (m_start + 1) % CAPACITY;
+            m_size--;
         }
+        m_keys[(m_start + m_size) % CAPACITY] = board.getKey();
+        m_size++;
     }
 
-    public boolean foundRecentlyNTimes(Board board, int N) {
+    /** Forgets every recorded position */
+    public void clear() {
+        m_start = 0;
+        m_size = 0;
+    }
+
+    /** Returns the number of times the position with the given key was recorded */
+    public int countOccurrences(long key) {
         int count = 0;
-        for (int i = 0; i < m_history.size() - 2; i++) {
-            if (m_history.get(i).equals(board)) {
-                count++;
-                if (count == N) {
-                    return true;
-                }
-            }
+        for (int i = 0; i < m_size; i++) {
+            if (m_keys[(m_start + i) % CAPACITY] == key) count++;
         }
-        return false;
+        return count;
+    }
+
+    /** Returns true if the board's position was recorded at least N times */
+    public boolean foundRecentlyNTimes(Board board, int N) {
+        return countOccurrences(board.getKey()) >= N;
     }
-}
\ No newline at end of file
+}
@@ -1,84 +1,435 @@
 package chess;
 
 import mytools.Coordinates;
+import java.lang.management.ManagementFactory;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.*;
 
+/**
+ * Chooses the moves of an AI player
+ * With more than one thread it runs a lazy SMP search: every thread searches the same position
+ * on its own copy of the board and they share their results through the transposition table
+ */
 public class ChessAI {
-    
-    private static final byte ITERATIONS = 4;
-    
+
+    public static final int DEFAULT_TABLE_MEGABYTES = 64;
+    public static final long DEFAULT_TIME_BUDGET_MILLIS = 2000;
+    /** Deepest iteration, leaving room on the undo stack for the validity checks of the last ply */
+    public static final int MAX_DEPTH = Board.MAX_PLY / 2;
+    /** Time budget of a search that runs until it is stopped */
+    private static final long UNLIMITED_MILLIS = Long.MAX_VALUE / 2000000;
+    /** Share of the time budget after which no new iteration is started */
+    private static final int SOFT_DEADLINE_PERCENT = 50;
+    /** Numbers the MBeans of the AIs of one JVM */
+    private static final AtomicInteger MBEAN_IDS = new AtomicInteger();
+
     private Board m_board;
     private BoardHistory m_history;
-    
+    private TranspositionTable m_table;
+    private SearchWorker[] m_workers;
+    private ExecutorService m_helperThreads;
+    private volatile boolean m_stopped;
+    private long m_timeBudgetMillis;
+    private int m_maxDepth;
+    // selective search techniques, all on by default and switchable to measure each on its own
+    private boolean m_nullMovePruning = true;
+    private boolean m_lateMoveReductions = true;
+    private boolean m_futilityPruning = true;
+    private boolean m_razoring = true;
+    private List<Integer> m_bestMoves;
+    private Random m_random = new Random();
+    private OpeningBook m_book;
+    private EndgameBitbases m_bitbases;
+    private SearchListener m_listener;
+    private volatile int[] m_principalVariation = new int[0];
+    // pondering: searching on the opponent's time (see startPondering)
+    private ExecutorService m_ponderThread;
+    private Future<SearchResult> m_ponderSearch;
+    private Board m_ponderBoard;
+    private int m_ponderPrediction;
+    private List<Integer> m_ponderMoves = new ArrayList<Integer>();
+    private SearchResult m_ponderResult;
+    private long m_ponderKey;
+    private boolean m_lastMovePondered;
+    private int m_lastMove;
+    private int m_lastBookMove;
+    private SearchResult m_lastResult;
+    private SearchStatistics m_lastStatistics;
+    private SearchMonitor m_monitor;
+    private ObjectName m_mbeanName;
+
     /** Constructor */
     public ChessAI(Board board, BoardHistory history) {
+        this(board, history, DEFAULT_TABLE_MEGABYTES);
+    }
+
+    /** Constructor with the size of the transposition table in megabytes */
+    public ChessAI(Board board, BoardHistory history, int tableMegabytes) {
         m_board = board;
         m_history = history;
+        m_table = new TranspositionTable(tableMegabytes);
+        m_timeBudgetMillis = DEFAULT_TIME_BUDGET_MILLIS;
+        m_maxDepth = MAX_DEPTH;
+        m_bestMoves = new ArrayList<Integer>();
+        m_lastStatistics = new SearchStatistics();
+        m_monitor = new SearchMonitor();
+        setThreads(1);
     }
 
-    /** Looks ahead some depth number of moves to find the first move of optimal result
-     *  given that the opponent will look ahead depth - 1 moves */
-    private int minMaxPruning(int depth, Board board, List<Coordinates> selections, List<Coordinates> destinations, char[] pawnEvolution, boolean avoidRepeats) {
-        int factor = board.m_whiteTurn ? 1 : -1;
-        if (board.hasLost()) return -10000*factor*(depth+1);
-        if (board.isDraw()) return 0;
-        if (depth == 0) return board.getAdvantagePoints();
-
-        List<Coordinates> nextSelects = new ArrayList<Coordinates>();
-        List<Coordinates> nextPlacements = new ArrayList<Coordinates>();
-        board.getAllPossibleChessMoves(nextSelects, nextPlacements);
-        int max = 0;
-        boolean firstIteration = true;
-        for (int i = 0; i < nextPlacements.size(); i++) {
-            Board newBoard = new Board(board);
-            newBoard.moveSelectedPiece(nextSelects.get(i), nextPlacements.get(i), true);
-            if (newBoard.getPieceAtCoordinate(nextPlacements.get(i)).m_type != Type.PAWN &&
-                avoidRepeats && destinations != null && m_history.foundRecentlyNTimes(newBoard, 2)) 
-                continue;
-            int prediction = -20000;
-            if (newBoard.pawnReachedEnd()) {
-                String allPossibleEvolves = "QNRB";
-                for (int j = 0; j < allPossibleEvolves.length(); j++) {
-                    Board newBoard2 = new Board(newBoard);
-                    char toEvolve = allPossibleEvolves.charAt(j);
-                    newBoard2.evolvePawn(toEvolve);
-                    int adv = factor*minMaxPruning(depth-1, newBoard2, null, null, null, avoidRepeats);
-                    if (adv > prediction) {
-                        prediction = adv;
-                        if (destinations != null) pawnEvolution[0] = toEvolve;
-                    }
-                }
-            } else {
-                prediction = factor*minMaxPruning(depth-1, newBoard, null, null, null, avoidRepeats);
-            }
-            if (firstIteration) {
-                max = prediction;
-                firstIteration = false;
-            }
-            if (destinations != null) {
-                if (prediction > max) {
-                    selections.clear();
-                    destinations.clear();
-                }
-                if (prediction >= max) {
-                    selections.add(nextSelects.get(i));
-                    destinations.add(nextPlacements.get(i));
-                }
+    /** Sets the number of threads searching together (the calling thread is one of them) */
+    public void setThreads(int threads) {
+        threads = Math.max(1, threads);
+        shutdown();
+        m_workers = new SearchWorker[threads];
+        for (int id = 0; id < threads; id++) {
+            m_workers[id] = new SearchWorker(this, m_table, m_history, id);
+        }
+        if (threads > 1) {
+            m_helperThreads = Executors.newFixedThreadPool(threads - 1, runnable -> {
+                Thread thread = new Thread(runnable, "chess-search-helper");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /** Returns the number of threads searching together */
+    public int getThreads() {
+        return m_workers.length;
+    }
+
+    /** Stops the helper threads (they are daemon threads, so this is only needed to free them early) */
+    public void shutdown() {
+        stopPondering();
+        if (m_ponderThread != null) {
+            m_ponderThread.shutdownNow();
+            m_ponderThread = null;
+        }
+        if (m_helperThreads != null) {
+            m_helperThreads.shutdownNow();
+            m_helperThreads = null;
+        }
+    }
+
+    /** Asks a running search to stop as soon as possible, it returns the result of the last completed depth
+     *  Can be called from any thread; it also ends a search prepared by prepareSearch that has not begun yet */
+    public void stop() {
+        m_stopped = true;
+    }
+
+    /** Clears the stop request ahead of a search that runs on another thread
+     *  Call it on the thread handing the search over, then searchPrepared on the searching thread */
+    public void prepareSearch() {
+        m_stopped = false;
+    }
+
+    /** Returns true once the workers were asked to stop searching */
+    boolean isStopped() {
+        return m_stopped;
+    }
+
+    /** Publishes the counters of the searches of this AI as an MBean named chess:type=ChessAI,id=<n>
+     *  Does nothing if it is already registered */
+    public void registerMBean() {
+        if (m_mbeanName != null) return;
+        try {
+            ObjectName name = new ObjectName("chess:type=ChessAI,id=" + MBEAN_IDS.incrementAndGet());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(m_monitor, name);
+            m_mbeanName = name;
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register the search MBean", e);
+        }
+    }
+
+    /** Searches the position of the board and returns the result of the main thread
+     *  The optimal moves of the last completed depth are kept for generateNextMove */
+    public SearchResult search() {
+        prepareSearch();
+        return searchPrepared();
+    }
+
+    /** Searches like search, but keeps a stop request sent since prepareSearch */
+    public SearchResult searchPrepared() {
+        return search(m_board, m_timeBudgetMillis, m_bestMoves);
+    }
+
+    /** Searches the position with the time budget, collecting the optimal moves of the last completed depth
+     *  The stop request must have been cleared by the caller */
+    private SearchResult search(Board board, long timeBudgetMillis, List<Integer> bestMoves) {
+        SearchEvent event = new SearchEvent();
+        event.begin();
+        long startTime = System.nanoTime();
+        long hardDeadline = startTime + timeBudgetMillis * 1000000;
+        long softDeadline = startTime + timeBudgetMillis * 1000000 * SOFT_DEADLINE_PERCENT / 100;
+        m_table.newSearch();
+        m_principalVariation = new int[0];
+        List<Future<SearchResult>> helpers = new ArrayList<Future<SearchResult>>();
+        for (int id = 1; id < m_workers.length; id++) {
+            SearchWorker worker = m_workers[id];
+            helpers.add(m_helperThreads.submit(() -> worker.iterativeDeepening(
+                board, new ArrayList<Integer>(), m_maxDepth, startTime, hardDeadline, hardDeadline)));
+        }
+        SearchResult result = m_workers[0].iterativeDeepening(
+            board, bestMoves, m_maxDepth, startTime, softDeadline, hardDeadline);
+        m_stopped = true;
+        for (Future<SearchResult> helper : helpers) {
+            try {
+                helper.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Search thread failed", e.getCause());
             }
-            if (prediction > max) max = prediction;
         }
-        return max*factor;
+        SearchStatistics statistics = new SearchStatistics();
+        for (SearchWorker worker : m_workers) {
+            statistics.add(worker.getStatistics());
+        }
+        statistics.copyDepths(m_workers[0].getStatistics());
+        long millis = (System.nanoTime() - startTime) / 1000000;
+        m_lastResult = new SearchResult(result.m_move, result.m_score, result.m_depth, statistics.getNodes(), millis);
+        m_lastStatistics = statistics;
+        m_monitor.record(m_lastResult, statistics);
+        commitEvent(event, m_lastResult, statistics);
+        return m_lastResult;
     }
 
-    /** Determines the next move to be made */
+    /** Called by the main worker after each completed depth with the principal variation of that depth */
+    void completeDepth(int depth, int score, int[] principalVariation, long startTime) {
+        m_principalVariation = principalVariation;
+        if (m_listener == null) return;
+        // the helpers are still counting, so the total is only a snapshot
+        long nodes = 0;
+        for (SearchWorker worker : m_workers) {
+            nodes += worker.getStatistics().getNodes();
+        }
+        long millis = (System.nanoTime() - startTime) / 1000000;
+        int move = (principalVariation.length == 0) ? Move.NONE : principalVariation[0];
+        m_listener.depthCompleted(new SearchResult(move, score, depth, nodes, millis), principalVariation);
+    }
+
+    /** Fills in and commits the flight recorder event of a search (if recording is enabled) */
+    private void commitEvent(SearchEvent event, SearchResult result, SearchStatistics statistics) {
+        event.end();
+        if (!event.shouldCommit()) return;
+        event.threads = m_workers.length;
+        event.depth = result.m_depth;
+        event.score = result.m_score;
+        event.nodes = result.m_nodes;
+        event.leafEvaluations = statistics.getLeafEvaluations();
+        event.terminalPositions = statistics.getTerminalPositions();
+        event.tableProbes = statistics.getTableProbes();
+        event.tableHits = statistics.getTableHits();
+        event.betaCutoffs = statistics.getBetaCutoffs();
+        event.firstMoveCutoffRate = statistics.getFirstMoveCutoffRate();
+        event.effectiveBranchingFactor = statistics.getEffectiveBranchingFactor();
+        event.commit();
+    }
+
+    /** Determines the next move to be made: a weighted random book move while the position is in the
+     *  opening book, otherwise one of the optimal moves of a search at random
+     *  If the position is the one pondered and the pondering thought at least half the time budget about it,
+     *  its moves are played without searching again (any other pondering still left a warm transposition table) */
     public void generateNextMove(Coordinates[] chessMove, char[] pawnEvolution) {
-        List<Coordinates> selection = new ArrayList<Coordinates>();
-        List<Coordinates> destination = new ArrayList<Coordinates>();
-        minMaxPruning(ITERATIONS, m_board, selection, destination, pawnEvolution, true);
-        if (selection.isEmpty()) minMaxPruning(ITERATIONS, m_board, selection, destination, pawnEvolution, false);
-        Random random = new Random();
-        int index = random.nextInt(destination.size());
-        chessMove[0] = selection.get(index);
-        chessMove[1] = destination.get(index);
-    }
-}
\ No newline at end of file
+        stopPondering();
+        int move = (m_book == null) ? Move.NONE : m_book.pickMove(m_board, m_random);
+        m_lastBookMove = move;
+        m_lastMovePondered = m_ponderResult != null && m_ponderKey == m_board.getKey() && !m_ponderMoves.isEmpty()
+                          && m_ponderResult.m_millis >= m_timeBudgetMillis * SOFT_DEADLINE_PERCENT / 100;
+        m_ponderResult = null;
+        if (move != Move.NONE) {
+            m_lastMovePondered = false;
+        } else if (m_lastMovePondered) {
+            move = m_ponderMoves.get(m_random.nextInt(m_ponderMoves.size()));
+        } else {
+            search();
+            move = m_bestMoves.get(m_random.nextInt(m_bestMoves.size()));
+        }
+        m_lastMove = move;
+        chessMove[0] = Coordinates.of(Move.getStart(move));
+        chessMove[1] = Coordinates.of(Move.getFinal(move));
+        if (Move.getPromotion(move) != null) pawnEvolution[0] = Move.getPromotionSymbol(move);
+    }
+
+    /** Starts searching on a background thread while the opponent thinks about their move (pondering)
+     *  If the last move of this AI is the start of its principal variation, the position after the reply it
+     *  expects is searched, otherwise the position of the board with every reply; it runs until
+     *  stopPondering or generateNextMove, and the board and history must not change before then */
+    public void startPondering() {
+        stopPondering();
+        int[] principalVariation = m_principalVariation;
+        m_ponderPrediction = Move.NONE;
+        m_ponderBoard = new Board(m_board);
+        if (principalVariation.length > 1 && principalVariation[0] == m_lastMove) {
+            int[] moves = new int[MoveGenerator.MAX_MOVES];
+            int count = m_board.generateLegalMoves(moves);
+            for (int i = 0; i < count; i++) {
+                if (moves[i] == principalVariation[1]) m_ponderPrediction = moves[i];
+            }
+        }
+        if (m_ponderPrediction != Move.NONE) m_ponderBoard.makeMove(m_ponderPrediction);
+        if (m_ponderThread == null) {
+            m_ponderThread = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "chess-ponder");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        Board ponderBoard = m_ponderBoard;
+        prepareSearch();
+        m_ponderSearch = m_ponderThread.submit(() -> search(ponderBoard, UNLIMITED_MILLIS, m_ponderMoves));
+    }
+
+    /** Stops pondering and keeps its result for generateNextMove, does nothing if the AI is not pondering */
+    public void stopPondering() {
+        if (m_ponderSearch == null) return;
+        m_ponderResult = null;
+        stop();
+        try {
+            m_ponderResult = m_ponderSearch.get();
+            m_ponderKey = m_ponderBoard.getKey();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            m_ponderResult = null;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Pondering failed", e.getCause());
+        } finally {
+            m_ponderSearch = null;
+        }
+    }
+
+    /** Returns true while a background search started by startPondering runs */
+    public boolean isPondering() {
+        return m_ponderSearch != null;
+    }
+
+    /** Returns the move the AI expects the opponent to play while it is pondering: the reply it ponders on, or
+     *  the best move found so far if it ponders on every reply (Move.NONE if there is none yet or it is not pondering) */
+    public int getHint() {
+        if (m_ponderSearch == null) return Move.NONE;
+        if (m_ponderPrediction != Move.NONE) return m_ponderPrediction;
+        int[] principalVariation = m_principalVariation;
+        return (principalVariation.length == 0) ? Move.NONE : principalVariation[0];
+    }
+
+    /** Returns true if the last generateNextMove played the result of pondering instead of searching */
+    public boolean wasLastMovePondered() {
+        return m_lastMovePondered;
+    }
+
+    /** Sets the opening book generateNextMove plays from (null for none) */
+    public void setOpeningBook(OpeningBook book) {
+        m_book = book;
+    }
+
+    /** Sets the listener told about every depth the search completes (null for none) */
+    public void setSearchListener(SearchListener listener) {
+        m_listener = listener;
+    }
+
+    /** Returns the moves both players are expected to play according to the last completed depth of the last
+     *  search, starting with its best move (empty before the first depth is complete) */
+    public int[] getPrincipalVariation() {
+        return m_principalVariation;
+    }
+
+    /** Sets the endgame bitbases the search takes exact scores from (null for none) */
+    public void setBitbases(EndgameBitbases bitbases) {
+        m_bitbases = bitbases;
+    }
+
+    EndgameBitbases getBitbases() {
+        return m_bitbases;
+    }
+
+    /** Returns the move the last generateNextMove took from the opening book, or Move.NONE if it searched */
+    public int getLastBookMove() {
+        return m_lastBookMove;
+    }
+
+    /** Sets the wall-clock time a move may take, the search stops starting new depths after half of it */
+    public void setTimeBudget(long millis) {
+        m_timeBudgetMillis = millis;
+    }
+
+    /** Sets the deepest iteration the search will start */
+    public void setMaxDepth(int depth) {
+        m_maxDepth = Math.max(1, Math.min(depth, MAX_DEPTH));
+    }
+
+    /** Turns null move pruning on or off: a position is cut off if passing the turn still fails high */
+    public void setNullMovePruning(boolean enabled) {
+        m_nullMovePruning = enabled;
+    }
+
+    /** Turns late move reductions on or off: quiet moves ordered late are first searched less deep */
+    public void setLateMoveReductions(boolean enabled) {
+        m_lateMoveReductions = enabled;
+    }
+
+    /** Turns futility pruning on or off: quiet moves next to the horizon are skipped if the evaluation is far below alpha */
+    public void setFutilityPruning(boolean enabled) {
+        m_futilityPruning = enabled;
+    }
+
+    /** Turns razoring on or off: positions next to the horizon far below alpha drop into the quiescence search */
+    public void setRazoring(boolean enabled) {
+        m_razoring = enabled;
+    }
+
+    /** Turns every selective search technique on or off at once */
+    public void setSelectiveSearch(boolean enabled) {
+        m_nullMovePruning = enabled;
+        m_lateMoveReductions = enabled;
+        m_futilityPruning = enabled;
+        m_razoring = enabled;
+    }
+
+    boolean isNullMovePruning() {
+        return m_nullMovePruning;
+    }
+
+    boolean isLateMoveReductions() {
+        return m_lateMoveReductions;
+    }
+
+    boolean isFutilityPruning() {
+        return m_futilityPruning;
+    }
+
+    boolean isRazoring() {
+        return m_razoring;
+    }
+
+    /** Empties the transposition table so the next search starts from scratch */
+    public void clearTable() {
+        m_table.clear();
+    }
+
+    /** Returns the result of the last completed search (or null before the first search) */
+    public SearchResult getLastResult() {
+        return m_lastResult;
+    }
+
+    /** Returns the counters of the last completed search, added up over all threads */
+    public SearchStatistics getLastStatistics() {
+        return m_lastStatistics;
+    }
+
+    /** Returns the number of transposition table probes made by the last search */
+    public long getTableProbes() {
+        return m_lastStatistics.getTableProbes();
+    }
+
+    /** Returns the fraction of transposition table probes of the last search that found their position */
+    public double getTableHitRate() {
+        return m_lastStatistics.getTableHitRate();
+    }
+
+    /** Returns the fraction of the pawn structure evaluations of the last search found in the pawn tables */
+    public double getPawnTableHitRate() {
+        return m_lastStatistics.getPawnHitRate();
+    }
+}
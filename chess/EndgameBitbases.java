@@ -0,0 +1,273 @@
+package chess;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.stream.IntStream;
+
+/**
+ * Exact results of the endings of king and queen, king and rook or king and pawn against a lone king
+ * Every table holds one byte per position, indexed by (side to move, strong king, weak king, piece) with
+ * the strong side playing up the board like white:
+ *  0: draw, 1-126: the player to move mates in that many plies, 0x80 | n: the player to move is mated in n plies
+ * The tables are generated by retrograde analysis, saved next to each other in a directory and read back
+ * through memory mappings
+ */
+public final class EndgameBitbases {
+
+    public static final int DRAW = 0;
+    /** Bit set in the result of a position the player to move loses */
+    public static final int LOSS = 0x80;
+    /** Returned by probe for positions no table covers */
+    public static final int NOT_FOUND = -1;
+    /** Positions per table: side to move, strong king, weak king and piece square */
+    public static final int POSITIONS = 2 * Board.SQUARES * Board.SQUARES * Board.SQUARES;
+
+    /** The pieces of the tables in the order they are generated (the pawn table needs the other two) */
+    private static final Type[] PIECES = {Type.QUEEN, Type.ROOK, Type.PAWN};
+    private static final String[] FILE_NAMES = {"kqk.bin", "krk.bin", "kpk.bin"};
+    private static final int STRONG_TO_MOVE = 0;
+    private static final int WEAK_TO_MOVE = 1;
+    /** Marks positions not yet resolved while generating */
+    private static final byte UNKNOWN = 0x7F;
+
+    /** Tables indexed like PIECES */
+    private final ByteBuffer[] m_tables;
+    private final long m_generationMillis;
+
+    private EndgameBitbases(ByteBuffer[] tables, long generationMillis) {
+        m_tables = tables;
+        m_generationMillis = generationMillis;
+    }
+
+    /** Maps the tables of the directory into memory, they must have been generated before (see BitbaseGenerator) */
+    public static EndgameBitbases open(Path directory) throws IOException {
+        return load(directory, false);
+    }
+
+    /** Generates every table again, overwriting the files in the directory, and maps them into memory */
+    public static EndgameBitbases generate(Path directory) throws IOException {
+        return load(directory, true);
+    }
+
+    private static EndgameBitbases load(Path directory, boolean generate) throws IOException {
+        if (generate) Files.createDirectories(directory);
+        ByteBuffer[] tables = new ByteBuffer[PIECES.length];
+        long start = System.nanoTime();
+        for (int table = 0; table < PIECES.length; table++) {
+            Path path = directory.resolve(FILE_NAMES[table]);
+            if (generate) {
+                Files.write(path, generateTable(PIECES[table], tables));
+            } else if (!Files.exists(path) || Files.size(path) != POSITIONS) {
+                throw new IOException("Missing or damaged bitbase " + path + ", generate it with BitbaseGenerator");
+            }
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                tables[table] = channel.map(FileChannel.MapMode.READ_ONLY, 0, POSITIONS);
+            }
+        }
+        return new EndgameBitbases(tables, generate ? (System.nanoTime() - start) / 1000000 : 0);
+    }
+
+    /** Returns how long generate took to generate the tables (0 for tables that were only opened) */
+    public long getGenerationMillis() {
+        return m_generationMillis;
+    }
+
+    private static int index(int sideToMove, int strongKing, int weakKing, int piece) {
+        return ((sideToMove * Board.SQUARES + strongKing) * Board.SQUARES + weakKing) * Board.SQUARES + piece;
+    }
+
+    /** Returns the result of the position for the player to move (see the class comment), or NOT_FOUND if
+     *  the position is not a lone king against king and queen, rook or pawn (or castling is still possible) */
+    public int probe(Board board) {
+        long occupied = board.getOccupied();
+        if (Long.bitCount(occupied) != 3 || board.getCastlingRights() != 0) return NOT_FOUND;
+        boolean strongIsWhite = Long.bitCount(board.getPieces(true)) == 2;
+        long pieceBit = board.getPieces(strongIsWhite) & ~board.getPieces(strongIsWhite, Type.KING);
+        int piece = Long.numberOfTrailingZeros(pieceBit);
+        int table;
+        switch (board.getPieceAtSquare(piece).m_type) {
+            case QUEEN:
+                table = 0;
+                break;
+            case ROOK:
+                table = 1;
+                break;
+            case PAWN:
+                table = 2;
+                break;
+            default:
+                return NOT_FOUND;
+        }
+        // the tables have the strong side playing up the board, so black's positions are mirrored
+        int mirror = strongIsWhite ? 0 : 56;
+        int strongKing = Long.numberOfTrailingZeros(board.getPieces(strongIsWhite, Type.KING)) ^ mirror;
+        int weakKing = Long.numberOfTrailingZeros(board.getPieces(!strongIsWhite, Type.KING)) ^ mirror;
+        int sideToMove = (board.m_whiteTurn == strongIsWhite) ? STRONG_TO_MOVE : WEAK_TO_MOVE;
+        return m_tables[table].get(index(sideToMove, strongKing, weakKing, piece ^ mirror)) & 0xFF;
+    }
+
+    /** Returns a line per table with its number of won and drawn positions and its longest mate */
+    public String toSummary() {
+        StringBuilder summary = new StringBuilder();
+        for (int table = 0; table < PIECES.length; table++) {
+            int won = 0;
+            int drawn = 0;
+            int longest = 0;
+            for (int i = 0; i < POSITIONS / 2; i++) {
+                int result = m_tables[table].get(i) & 0xFF;
+                if (result == DRAW) {
+                    drawn++;
+                } else if ((result & LOSS) == 0) {
+                    won++;
+                    longest = Math.max(longest, result);
+                }
+            }
+            summary.append(String.format("%s: %d won and %d drawn or illegal positions with the strong side to move, "
+                                         + "longest mate %d plies%n", FILE_NAMES[table], won, drawn, longest));
+        }
+        return summary.toString();
+    }
+
+    /** Squares the piece attacks from its square */
+    private static long attacks(Type piece, int square, long occupied) {
+        switch (piece) {
+            case QUEEN:
+                return Bitboards.queenAttacks(square, occupied);
+            case ROOK:
+                return Bitboards.rookAttacks(square, occupied);
+            default:
+                return Bitboards.PAWN_ATTACKS[Board.colourIndex(true)][square];
+        }
+    }
+
+    /** Returns true if the position can happen: no two pieces on one square, the kings apart, no pawn on the
+     *  first or last row and the player who just moved not in check */
+    private static boolean isLegal(Type piece, int sideToMove, int strongKing, int weakKing, int square) {
+        if (strongKing == weakKing || square == strongKing || square == weakKing) return false;
+        if ((Bitboards.KING_ATTACKS[strongKing] & (1L << weakKing)) != 0) return false;
+        int row = square / Board.COLS;
+        if (piece == Type.PAWN && (row == 0 || row == Board.ROWS - 1)) return false;
+        long occupied = (1L << strongKing) | (1L << weakKing) | (1L << square);
+        return sideToMove == WEAK_TO_MOVE || (attacks(piece, square, occupied) & (1L << weakKing)) == 0;
+    }
+
+    /** Builds one table: positions without moves are resolved first, then every pass resolves the positions
+     *  one ply further from mate until two passes in a row find nothing new; the rest are draws
+     *  Odd passes only write positions with the strong side to move and read the others (even passes the
+     *  other way round), so each pass runs over the strong king's squares in parallel without locks */
+    private static byte[] generateTable(Type piece, ByteBuffer[] tables) {
+        byte[] results = new byte[POSITIONS];
+        IntStream.range(0, 2 * Board.SQUARES).parallel().forEach(chunk -> {
+            int sideToMove = chunk / Board.SQUARES;
+            int strongKing = chunk % Board.SQUARES;
+            for (int weakKing = 0; weakKing < Board.SQUARES; weakKing++) {
+                for (int square = 0; square < Board.SQUARES; square++) {
+                    int index = index(sideToMove, strongKing, weakKing, square);
+                    if (!isLegal(piece, sideToMove, strongKing, weakKing, square)) {
+                        results[index] = DRAW;
+                    } else {
+                        results[index] = initialResult(piece, sideToMove, strongKing, weakKing, square);
+                    }
+                }
+            }
+        });
+
+        int idlePasses = 0;
+        for (int plies = 1; idlePasses < 2 && plies < UNKNOWN; plies++) {
+            int pass = plies;
+            int sideToMove = (plies % 2 == 1) ? STRONG_TO_MOVE : WEAK_TO_MOVE;
+            int resolved = IntStream.range(0, Board.SQUARES).parallel().map(strongKing -> {
+                int count = 0;
+                for (int weakKing = 0; weakKing < Board.SQUARES; weakKing++) {
+                    for (int square = 0; square < Board.SQUARES; square++) {
+                        int index = index(sideToMove, strongKing, weakKing, square);
+                        if (results[index] != UNKNOWN) continue;
+                        boolean done = (sideToMove == STRONG_TO_MOVE)
+                                     ? canMateIn(piece, results, tables, strongKing, weakKing, square, pass)
+                                     : mustBeMatedIn(piece, results, strongKing, weakKing, square, pass);
+                        if (done) {
+                            results[index] = (byte) ((sideToMove == STRONG_TO_MOVE) ? pass : LOSS | pass);
+                            count++;
+                        }
+                    }
+                }
+                return count;
+            }).sum();
+            idlePasses = (resolved == 0) ? idlePasses + 1 : 0;
+        }
+        for (int i = 0; i < POSITIONS; i++) {
+            if (results[i] == UNKNOWN) results[i] = DRAW;
+        }
+        return results;
+    }
+
+    /** Resolves a legal position without moves (mate or stalemate), leaving the others UNKNOWN */
+    private static byte initialResult(Type piece, int sideToMove, int strongKing, int weakKing, int square) {
+        long occupied = (1L << strongKing) | (1L << weakKing) | (1L << square);
+        if (sideToMove == WEAK_TO_MOVE) {
+            long targets = Bitboards.KING_ATTACKS[weakKing] & ~Bitboards.KING_ATTACKS[strongKing];
+            long attacked = attacks(piece, square, occupied ^ (1L << weakKing));
+            // the targets include taking the piece when it is not defended
+            if ((targets & ~attacked) != 0) return UNKNOWN;
+            return ((attacked & (1L << weakKing)) != 0) ? (byte) LOSS : DRAW;
+        }
+        long kingTargets = Bitboards.KING_ATTACKS[strongKing] & ~Bitboards.KING_ATTACKS[weakKing] & ~(1L << square);
+        if (kingTargets != 0 || piece != Type.PAWN || (occupied & (1L << (square - Board.COLS))) == 0) return UNKNOWN;
+        return DRAW;
+    }
+
+    /** Returns true if the strong side to move has a move after which the weak side is mated in plies - 1 */
+    private static boolean canMateIn(Type piece, byte[] results, ByteBuffer[] tables, int strongKing, int weakKing,
+                                     int square, int plies) {
+        byte target = (byte) (LOSS | (plies - 1));
+        long occupied = (1L << strongKing) | (1L << weakKing) | (1L << square);
+        long kingTargets = Bitboards.KING_ATTACKS[strongKing] & ~Bitboards.KING_ATTACKS[weakKing] & ~(1L << square);
+        while (kingTargets != 0) {
+            int to = Long.numberOfTrailingZeros(kingTargets);
+            if (results[index(WEAK_TO_MOVE, to, weakKing, square)] == target) return true;
+            kingTargets &= kingTargets - 1;
+        }
+        if (piece != Type.PAWN) {
+            long targets = attacks(piece, square, occupied) & ~occupied;
+            while (targets != 0) {
+                int to = Long.numberOfTrailingZeros(targets);
+                if (results[index(WEAK_TO_MOVE, strongKing, weakKing, to)] == target) return true;
+                targets &= targets - 1;
+            }
+            return false;
+        }
+        int to = square - Board.COLS;
+        if ((occupied & (1L << to)) != 0) return false;
+        if (to / Board.COLS == 0) {
+            // the pawn evolves into a queen or a rook, the other pieces cannot win
+            for (int table = 0; table < 2; table++) {
+                if (tables[table].get(index(WEAK_TO_MOVE, strongKing, weakKing, to)) == target) return true;
+            }
+            return false;
+        }
+        if (results[index(WEAK_TO_MOVE, strongKing, weakKing, to)] == target) return true;
+        int doubleSquare = to - Board.COLS;
+        return square / Board.COLS == Board.ROWS - 2 && (occupied & (1L << doubleSquare)) == 0
+            && results[index(WEAK_TO_MOVE, strongKing, weakKing, doubleSquare)] == target;
+    }
+
+    /** Returns true if every move of the weak side to move leads to a position the strong side wins, the
+     *  slowest of them in plies - 1 (a position is only asked once all faster mates are resolved) */
+    private static boolean mustBeMatedIn(Type piece, byte[] results, int strongKing, int weakKing, int square,
+                                         int plies) {
+        long occupied = (1L << strongKing) | (1L << weakKing) | (1L << square);
+        long attacked = attacks(piece, square, occupied ^ (1L << weakKing));
+        long targets = Bitboards.KING_ATTACKS[weakKing] & ~Bitboards.KING_ATTACKS[strongKing] & ~attacked;
+        // taking the undefended piece leaves two kings
+        if ((targets & (1L << square)) != 0) return false;
+        while (targets != 0) {
+            int to = Long.numberOfTrailingZeros(targets);
+            int result = results[index(STRONG_TO_MOVE, strongKing, to, square)];
+            if (result == UNKNOWN || result == DRAW || result > plies - 1) return false;
+            targets &= targets - 1;
+        }
+        return true;
+    }
+}
@@ -2,6 +2,8 @@ package chess;
 import mytools.*;
 import chess.pieces.*;
 
+import java.io.IOException;
+import java.nio.file.*;
 import java.util.*;
 
 /**
@@ -45,7 +47,44 @@ public class GameMain {
     private Coordinates convertChessCoordinates(String prompt) {
         int col = prompt.charAt(0) - 'A';
         int row = Board.ROWS - (prompt.charAt(1) - '0');
-        return new Coordinates(row, col);
+        return Coordinates.of(row, col);
+    }
+
+    /** Prints the move the pondering AI expects the player to make */
+    private void printHint() {
+        int hint = m_AI.getHint();
+        if (!m_AI.isPondering()) {
+            System.out.print("Hints are only given in games against the AI. Please select your piece to move: ");
+        } else if (hint == Move.NONE) {
+            System.out.print("No hint is available yet. Please select your piece to move: ");
+        } else {
+            String text = Move.toText(hint).toUpperCase();
+            System.out.print("Hint: move " + text.substring(0, 2) + " to " + text.substring(2, 4)
+                             + ". Please select your piece to move: ");
+        }
+    }
+
+    /** Lets the AI play from the opening book file if there is one */
+    private void loadOpeningBook(String fileName) {
+        Path path = Paths.get(fileName);
+        if (!Files.exists(path)) return;
+        try {
+            OpeningBook book = OpeningBook.open(path);
+            m_AI.setOpeningBook(book);
+            System.out.println("Opening book " + fileName + " loaded (" + book.size() + " entries).");
+        } catch (IOException e) {
+            System.out.println("Opening book " + fileName + " could not be read: " + e.getMessage());
+        }
+    }
+
+    /** Lets the AI score simple endings exactly with the bitbases BitbaseGenerator generated into the directory */
+    private void loadBitbases(String directory) {
+        try {
+            m_AI.setBitbases(EndgameBitbases.open(Paths.get(directory)));
+            System.out.println("Endgame bitbases " + directory + " loaded.");
+        } catch (IOException e) {
+            System.out.println("Endgame bitbases in " + directory + " could not be opened: " + e.getMessage());
+        }
     }
 
     /** Constructor for GameMain class */
@@ -53,6 +92,11 @@ public class GameMain {
         m_board = new Board();
         m_history = new BoardHistory();
         m_AI = new ChessAI(m_board, m_history);
+        m_AI.setThreads(Integer.getInteger("chess.threads", 1));
+        m_AI.registerMBean();
+        loadOpeningBook(System.getProperty("chess.book", "book.bin"));
+        String bitbases = System.getProperty("chess.bitbases");
+        if (bitbases != null) loadBitbases(bitbases);
         
         //Loops per game of chess, break out of loop when input to keep playing is N
         boolean sessionNotDone = true;
@@ -67,8 +111,10 @@ public class GameMain {
             getAIStatusOfPlayer(isPlayerAI, true, validArgsYN);
             getAIStatusOfPlayer(isPlayerAI, false, validArgsYN);
 
-            String[] validArgs = {"ABCDEFGH","12345678"};
+            // ?? asks for a hint while the AI ponders
+            String[] validArgs = {"ABCDEFGH?","12345678?"};
             String prompt = "";
+            boolean ponder = Boolean.parseBoolean(System.getProperty("chess.ponder", "true"));
             
             //Loops per turn of chess
             boolean gameNotDone = true;
@@ -81,24 +127,52 @@ public class GameMain {
                     System.out.println("AI is thinking...");
                     Coordinates[] chessMove = new Coordinates[2];
                     char[] pawnEvolution = {'.'};
+                    long start = System.nanoTime();
                     m_AI.generateNextMove(chessMove, pawnEvolution);
-                    m_history.addBoard(new Board(m_board));
-                    m_board.moveSelectedPiece(chessMove[0], chessMove[1], true);
+                    SearchResult result = m_AI.getLastResult();
+                    if (m_AI.getLastBookMove() != Move.NONE) {
+                        System.out.printf("AI played %s from the opening book in %d microseconds%n",
+                                          Move.toText(m_AI.getLastBookMove()), (System.nanoTime() - start) / 1000);
+                    } else if (m_AI.wasLastMovePondered()) {
+                        System.out.printf("AI had already searched to depth %d while you were thinking (answered in %d ms)%n",
+                                          result.m_depth, (System.nanoTime() - start) / 1000000);
+                    } else {
+                        System.out.printf("AI searched to depth %d in %d ms (%d positions, %.1f%% hash hits, %.1f%% pawn hits)%n",
+                                          result.m_depth, result.m_millis, result.m_nodes, 100*m_AI.getTableHitRate(),
+                                          100*m_AI.getPawnTableHitRate());
+                    }
+                    if (Boolean.getBoolean("chess.stats") && m_AI.getLastBookMove() == Move.NONE && !m_AI.wasLastMovePondered()) {
+                        System.out.println("Search statistics: " + m_AI.getLastStatistics().toSummary());
+                    }
+                    m_history.addBoard(m_board);
+                    m_board.moveSelectedPiece(chessMove[0], chessMove[1]);
                     if (m_board.pawnReachedEnd()) {
                         m_board.evolvePawn(pawnEvolution[0]);
                     }
                     turnNotDone = false;
                 }
 
+                // the AI thinks on the player's time while the player chooses a move against it
+                if (turnNotDone && ponder && isPlayerAI.get(!m_board.m_whiteTurn)) {
+                    m_AI.startPondering();
+                }
+
                 //Loops until player makes a valid move
                 while (turnNotDone) {
-                    System.out.print("Please select your piece to move (eg. A3): ");
+                    System.out.print("Please select your piece to move (eg. A3, or ?? for a hint): ");
                     Set<Coordinates> validMoves = null;
                     Coordinates rcStart = null;
                     //Loops until player selects his own chess piece
                     boolean pieceNotSelected = true;
                     while (pieceNotSelected) {
                         prompt = Reader.receiveValidInput(2, validArgs);
+                        if (prompt.equals("??")) {
+                            printHint();
+                            continue;
+                        } else if (prompt.indexOf('?') >= 0) {
+                            System.out.print("The input you provided is not valid. Please try again: ");
+                            continue;
+                        }
                         rcStart = convertChessCoordinates(prompt);
                         Piece piece = m_board.getPieceAtCoordinate(rcStart);
                         if (piece != null && piece.m_isWhite == m_board.m_whiteTurn) {
@@ -128,8 +202,10 @@ public class GameMain {
                         } else {
                             Coordinates rcFinal = convertChessCoordinates(prompt);
                             if (validMoves.contains(rcFinal)) {
-                                m_history.addBoard(new Board(m_board));
-                                m_board.moveSelectedPiece(rcStart, rcFinal, true);
+                                // the pondering search reads the history, so it stops before the move is made
+                                m_AI.stopPondering();
+                                m_history.addBoard(m_board);
+                                m_board.moveSelectedPiece(rcStart, rcFinal);
                                 if (m_board.pawnReachedEnd()) {
                                     System.out.println("Your pawn has reached the end! Select what it becomes...");
                                     System.out.print(  "(R = rook, N = knight, B = bishop, Q = queen): ");
@@ -150,7 +226,7 @@ public class GameMain {
                 if (m_board.hasLost()) {
                     System.out.println("The winning player is " + currPlayer + "!"); 
                     gameNotDone = false;
-                } else if (m_board.isDraw()) {
+                } else if (m_board.isDraw() || m_history.foundRecentlyNTimes(m_board, 2)) {
                     System.out.println("It's a draw."); 
                     gameNotDone = false;
                 }
@@ -0,0 +1,267 @@
+package chess;
+
+import mytools.Coordinates;
+
+/**
+ * Static helpers for chess moves packed into an int
+ *  bits 0-5: start square, bits 6-11: final square, bits 12-14: promotion type (ordinal + 1, 0 for none)
+ *  Moves from the MoveGenerator also hold bits 15-17: moved type (ordinal), bits 18-20: captured type
+ *  (ordinal + 1, 0 for none) and bits 21-23: FLAG_* bits; making a move only needs the first 15 bits
+ */
+public final class Move {
+
+    public static final int NONE = 0;
+    /** Symbols accepted by Board.evolvePawn in the order the AI tries them */
+    public static final String PROMOTIONS = "QNRB";
+    /** A pawn moving two squares forward */
+    public static final int FLAG_DOUBLE_PUSH = 1;
+    public static final int FLAG_EN_PASSANT = 2;
+    public static final int FLAG_CASTLING = 4;
+
+    private static final int SQUARE_MASK = 0x3F;
+    private static final int FINAL_SHIFT = 6;
+    private static final int PROMOTION_SHIFT = 12;
+    private static final int PROMOTION_MASK = 0x7;
+    private static final int MOVED_SHIFT = 15;
+    private static final int CAPTURED_SHIFT = 18;
+    private static final int FLAGS_SHIFT = 21;
+    private static final int TYPE_MASK = 0x7;
+    private static final Type[] TYPES = Type.values();
+    /** SAN letter of each piece indexed by Type ordinal (pawns have none) */
+    private static final String SAN_LETTERS = " RNBQK";
+
+    private Move() {}
+
+    /** Packs a move without promotion */
+    public static int encode(int startSquare, int finalSquare) {
+        return startSquare | (finalSquare << FINAL_SHIFT);
+    }
+
+    /** Packs a move without promotion from coordinates */
+    public static int encode(Coordinates startRC, Coordinates finalRC) {
+        return encode(startRC.index(), finalRC.index());
+    }
+
+    /** Packs a pawn move that evolves into the piece of the given symbol (see PROMOTIONS) */
+    public static int encode(int startSquare, int finalSquare, char newPiece) {
+        return encode(startSquare, finalSquare) | ((toType(newPiece).ordinal() + 1) << PROMOTION_SHIFT);
+    }
+
+    /** Packs a move with everything the MoveGenerator knows about it (promotion and captured may be null) */
+    public static int encode(int startSquare, int finalSquare, Type moved, Type captured, Type promotion, int flags) {
+        int move = encode(startSquare, finalSquare) | (moved.ordinal() << MOVED_SHIFT) | (flags << FLAGS_SHIFT);
+        if (captured != null) move |= (captured.ordinal() + 1) << CAPTURED_SHIFT;
+        if (promotion != null) move |= (promotion.ordinal() + 1) << PROMOTION_SHIFT;
+        return move;
+    }
+
+    public static int getStart(int move) {
+        return move & SQUARE_MASK;
+    }
+
+    public static int getFinal(int move) {
+        return (move >>> FINAL_SHIFT) & SQUARE_MASK;
+    }
+
+    /** Returns the type the pawn evolves into, or null if the move is not a promotion */
+    public static Type getPromotion(int move) {
+        int promotion = (move >>> PROMOTION_SHIFT) & PROMOTION_MASK;
+        return promotion == 0 ? null : TYPES[promotion - 1];
+    }
+
+    /** Returns the type of the moved piece (only for moves from the MoveGenerator) */
+    public static Type getMoved(int move) {
+        return TYPES[(move >>> MOVED_SHIFT) & TYPE_MASK];
+    }
+
+    /** Returns the type of the taken piece, or null if the move is not a capture (only for moves from the MoveGenerator) */
+    public static Type getCaptured(int move) {
+        int captured = (move >>> CAPTURED_SHIFT) & TYPE_MASK;
+        return captured == 0 ? null : TYPES[captured - 1];
+    }
+
+    /** Returns true if the move takes a piece, including en passant (only for moves from the MoveGenerator) */
+    public static boolean isCapture(int move) {
+        return ((move >>> CAPTURED_SHIFT) & TYPE_MASK) != 0;
+    }
+
+    /** Returns the FLAG_* bits of the move (only for moves from the MoveGenerator) */
+    public static int getFlags(int move) {
+        return move >>> FLAGS_SHIFT;
+    }
+
+    /** Returns the evolvePawn symbol of the promotion, or '.' if the move is not a promotion */
+    public static char getPromotionSymbol(int move) {
+        Type type = getPromotion(move);
+        if (type == null) return '.';
+        switch (type) {
+            case ROOK:
+                return 'R';
+            case KNIGHT:
+                return 'N';
+            case BISHOP:
+                return 'B';
+            default:
+                return 'Q';
+        }
+    }
+
+    /** Returns the move in long algebraic notation such as e2e4 or e7e8q */
+    public static String toText(int move) {
+        String text = squareName(getStart(move)) + squareName(getFinal(move));
+        return (getPromotion(move) == null) ? text : text + Character.toLowerCase(getPromotionSymbol(move));
+    }
+
+    /** Returns the legal move of the position written in long algebraic notation such as e2e4 or e7e8q,
+     *  or NONE if there is no such move */
+    public static int fromText(Board board, String text) {
+        if (text.length() < 4 || text.length() > 5) return NONE;
+        int startSquare = parseSquare(text, 0);
+        int finalSquare = parseSquare(text, 2);
+        char promotion = (text.length() == 5) ? Character.toUpperCase(text.charAt(4)) : '.';
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int count = board.generateLegalMoves(moves);
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            if (getStart(move) == startSquare && getFinal(move) == finalSquare && getPromotionSymbol(move) == promotion) {
+                return move;
+            }
+        }
+        return NONE;
+    }
+
+    /** Returns the legal move of the position written in standard algebraic notation such as Nbd7, exd5,
+     *  e8=Q+ or O-O, or NONE if there is no such move or more than one */
+    public static int fromSan(Board board, String san) {
+        String text = san.replaceAll("[+#!?]+$", "").replace("e.p.", "");
+        boolean castling = text.equals("O-O") || text.equals("0-0");
+        boolean longCastling = text.equals("O-O-O") || text.equals("0-0-0");
+        Type moved = Type.PAWN;
+        Type promotion = null;
+        int finalSquare = -1;
+        String disambiguation = "";
+        if (!castling && !longCastling) {
+            if (text.length() > 2 && "QNRB".indexOf(text.charAt(text.length() - 1)) >= 0
+            &&  Character.isLetter(text.charAt(text.length() - 1))) {
+                promotion = toType(text.charAt(text.length() - 1));
+                text = text.substring(0, text.length() - 1);
+                if (text.endsWith("=")) text = text.substring(0, text.length() - 1);
+            }
+            if (text.length() < 2) return NONE;
+            finalSquare = parseSquare(text, text.length() - 2);
+            if (finalSquare < 0) return NONE;
+            int pieceEnd = 0;
+            if ("KQRBN".indexOf(text.charAt(0)) >= 0) {
+                moved = (text.charAt(0) == 'K') ? Type.KING : toType(text.charAt(0));
+                pieceEnd = 1;
+            }
+            disambiguation = text.substring(pieceEnd, text.length() - 2).replace("x", "").replace("-", "");
+        }
+
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int count = board.generateLegalMoves(moves);
+        int found = NONE;
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            if (castling || longCastling) {
+                if ((getFlags(move) & FLAG_CASTLING) == 0 || (getFinal(move) > getStart(move)) != castling) continue;
+            } else {
+                if (getMoved(move) != moved || getFinal(move) != finalSquare || getPromotion(move) != promotion) continue;
+                if (!matchesDisambiguation(getStart(move), disambiguation)) continue;
+            }
+            if (found != NONE) return NONE;
+            found = move;
+        }
+        return found;
+    }
+
+    /** Returns the legal move of the position in standard algebraic notation such as Nbd7, exd5, e8=Q+ or O-O,
+     *  with the file, rank or both of the start square only when another piece of its kind could go there too
+     *  The move is made on the board to find out if it checks or mates, then taken back */
+    public static String toSan(Board board, int move) {
+        int startSquare = getStart(move);
+        int finalSquare = getFinal(move);
+        StringBuilder san = new StringBuilder();
+        if ((getFlags(move) & FLAG_CASTLING) != 0) {
+            san.append((finalSquare > startSquare) ? "O-O" : "O-O-O");
+        } else {
+            Type moved = getMoved(move);
+            if (moved == Type.PAWN) {
+                if (isCapture(move)) san.append(squareName(startSquare).charAt(0));
+            } else {
+                san.append(SAN_LETTERS.charAt(moved.ordinal()));
+                int[] moves = new int[MoveGenerator.MAX_MOVES];
+                int count = board.generateLegalMoves(moves);
+                boolean ambiguous = false;
+                boolean sameFile = false;
+                boolean sameRank = false;
+                for (int i = 0; i < count; i++) {
+                    int other = getStart(moves[i]);
+                    if (getMoved(moves[i]) != moved || getFinal(moves[i]) != finalSquare || other == startSquare) continue;
+                    ambiguous = true;
+                    sameFile |= other % Board.COLS == startSquare % Board.COLS;
+                    sameRank |= other / Board.COLS == startSquare / Board.COLS;
+                }
+                String start = squareName(startSquare);
+                if (ambiguous && !sameFile) {
+                    san.append(start.charAt(0));
+                } else if (ambiguous && !sameRank) {
+                    san.append(start.charAt(1));
+                } else if (ambiguous) {
+                    san.append(start);
+                }
+            }
+            if (isCapture(move)) san.append('x');
+            san.append(squareName(finalSquare));
+            if (getPromotion(move) != null) san.append('=').append(getPromotionSymbol(move));
+        }
+        board.makeMove(move);
+        if (board.isKingChecked(board.m_whiteTurn)) {
+            san.append((board.generateLegalMoves(new int[MoveGenerator.MAX_MOVES]) == 0) ? '#' : '+');
+        }
+        board.unmakeMove();
+        return san.toString();
+    }
+
+    /** Returns true if the start square has the file and/or rank given in front of the final square of a SAN move */
+    private static boolean matchesDisambiguation(int startSquare, String disambiguation) {
+        for (int i = 0; i < disambiguation.length(); i++) {
+            char c = disambiguation.charAt(i);
+            if (c >= 'a' && c <= 'h') {
+                if (startSquare % Board.COLS != c - 'a') return false;
+            } else if (c >= '1' && c <= '8') {
+                if (Board.ROWS - startSquare / Board.COLS != c - '0') return false;
+            } else {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the square named at the index of the text (such as e4), or -1 if there is none */
+    private static int parseSquare(String text, int index) {
+        char file = text.charAt(index);
+        char rank = text.charAt(index + 1);
+        if (file < 'a' || file > 'h' || rank < '1' || rank > '8') return -1;
+        return (Board.ROWS - (rank - '0')) * Board.COLS + (file - 'a');
+    }
+
+    /** Returns the name of the square such as e4 */
+    public static String squareName(int square) {
+        return "" + (char) ('a' + square % Board.COLS) + (Board.ROWS - square / Board.COLS);
+    }
+
+    /** Converts an evolvePawn symbol into a piece type */
+    private static Type toType(char newPiece) {
+        switch (newPiece) {
+            case 'R':
+                return Type.ROOK;
+            case 'N':
+                return Type.KNIGHT;
+            case 'B':
+                return Type.BISHOP;
+            default:
+                return Type.QUEEN;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package chess;
+
+import chess.pieces.*;
+
+/**
+ * Generates the legal moves of the player to move as packed ints (see Move) without allocating
+ * Legality comes from the pieces pinned to their king and the squares that stop a check, only king
+ * moves and en passant captures look at the occupancy after the move
+ */
+public final class MoveGenerator {
+
+    /** Size of a move buffer that holds every legal move of any position */
+    public static final int MAX_MOVES = 256;
+    /** Pieces a pawn can evolve into, in the order of Move.PROMOTIONS */
+    private static final Type[] PROMOTION_TYPES = {Type.QUEEN, Type.KNIGHT, Type.ROOK, Type.BISHOP};
+    /** Captures only consider evolving into a queen */
+    private static final Type[] QUEEN_PROMOTION = {Type.QUEEN};
+
+    private MoveGenerator() {}
+
+    /** Writes all legal moves of the player to move into moves and returns how many there are
+     *  A pawn reaching the end is added once per piece it can evolve into, in the order of Move.PROMOTIONS */
+    public static int generateLegalMoves(Board board, int[] moves) {
+        return generate(board, moves, false);
+    }
+
+    /** Writes only the legal captures (including en passant) and queen promotions of the player to move
+     *  into moves and returns how many there are, for the quiescence search */
+    public static int generateLegalCaptures(Board board, int[] moves) {
+        return generate(board, moves, true);
+    }
+
+    private static int generate(Board board, int[] moves, boolean capturesOnly) {
+        boolean isWhite = board.m_whiteTurn;
+        long own = board.getPieces(isWhite);
+        long occupied = board.getOccupied();
+        long kingBit = board.getPieces(isWhite, Type.KING);
+        if (kingBit == 0) return 0;
+        int king = Long.numberOfTrailingZeros(kingBit);
+        int count = 0;
+
+        // the king may not step onto an attacked square, including the squares behind it on a checking ray
+        // every move of a piece lands on one of these squares, pawns are handled separately
+        long landing = capturesOnly ? board.getPieces(!isWhite) : ~own;
+        long targets = Bitboards.KING_ATTACKS[king] & landing;
+        long withoutKing = occupied ^ kingBit;
+        while (targets != 0) {
+            int finalSquare = Long.numberOfTrailingZeros(targets);
+            if (!board.isSquareAttacked(finalSquare, !isWhite, withoutKing)) {
+                moves[count++] = encode(board, king, finalSquare, Type.KING, null, 0);
+            }
+            targets &= targets - 1;
+        }
+
+        long checkers = board.getAttackers(king, !isWhite, occupied);
+        if (Long.bitCount(checkers) > 1) return count;
+        // with one checker every other move has to take it or step between it and the king
+        long evasions = -1L;
+        if (checkers != 0) {
+            evasions = checkers | Bitboards.between(king, Long.numberOfTrailingZeros(checkers));
+        } else if (!capturesOnly) {
+            count = addCastlingMoves(board, moves, count, king, isWhite);
+        }
+        long pinned = getPinnedPieces(board, king, isWhite);
+
+        long pieces = own & ~kingBit;
+        while (pieces != 0) {
+            int startSquare = Long.numberOfTrailingZeros(pieces);
+            pieces &= pieces - 1;
+            long allowed = evasions;
+            if ((pinned & (1L << startSquare)) != 0) allowed &= Bitboards.line(king, startSquare);
+            Type type = board.getPieceAtSquare(startSquare).m_type;
+            switch (type) {
+                case PAWN:
+                    count = addPawnMoves(board, moves, count, startSquare, allowed, king, isWhite, capturesOnly);
+                    continue;
+                case KNIGHT:
+                    targets = Bitboards.KNIGHT_ATTACKS[startSquare];
+                    break;
+                case BISHOP:
+                    targets = Bitboards.bishopAttacks(startSquare, occupied);
+                    break;
+                case ROOK:
+                    targets = Bitboards.rookAttacks(startSquare, occupied);
+                    break;
+                default:
+                    targets = Bitboards.queenAttacks(startSquare, occupied);
+                    break;
+            }
+            targets &= landing & allowed;
+            while (targets != 0) {
+                int finalSquare = Long.numberOfTrailingZeros(targets);
+                moves[count++] = encode(board, startSquare, finalSquare, type, null, 0);
+                targets &= targets - 1;
+            }
+        }
+        return count;
+    }
+
+    /** Packs a move, reading the captured piece (if any) from the board */
+    private static int encode(Board board, int startSquare, int finalSquare, Type moved, Type promotion, int flags) {
+        Piece captured = board.getPieceAtSquare(finalSquare);
+        return Move.encode(startSquare, finalSquare, moved, (captured == null) ? null : captured.m_type, promotion, flags);
+    }
+
+    /** Returns the pieces of the player that cannot leave the line between their king and an enemy sliding piece */
+    private static long getPinnedPieces(Board board, int king, boolean isWhite) {
+        long occupied = board.getOccupied();
+        long enemies = board.getPieces(!isWhite);
+        long queens = board.getPieces(!isWhite, Type.QUEEN);
+        // sliding pieces that would attack the king if none of the player's own pieces were in the way
+        long snipers = (Bitboards.rookAttacks(king, enemies) & (board.getPieces(!isWhite, Type.ROOK) | queens))
+                     | (Bitboards.bishopAttacks(king, enemies) & (board.getPieces(!isWhite, Type.BISHOP) | queens));
+        long pinned = 0;
+        while (snipers != 0) {
+            long blockers = Bitboards.between(king, Long.numberOfTrailingZeros(snipers)) & occupied;
+            if (Long.bitCount(blockers) == 1) pinned |= blockers;
+            snipers &= snipers - 1;
+        }
+        return pinned & board.getPieces(isWhite);
+    }
+
+    /** Adds the castling moves of a king that is not in check */
+    private static int addCastlingMoves(Board board, int[] moves, int count, int king, boolean isWhite) {
+        int rights = board.getCastlingRights();
+        int left = isWhite ? Board.CASTLING_WHITE_LEFT : Board.CASTLING_BLACK_LEFT;
+        int right = isWhite ? Board.CASTLING_WHITE_RIGHT : Board.CASTLING_BLACK_RIGHT;
+        if ((rights & left) != 0) count = addCastlingMove(board, moves, count, king, isWhite, -1);
+        if ((rights & right) != 0) count = addCastlingMove(board, moves, count, king, isWhite, 1);
+        return count;
+    }
+
+    /** Adds castling two squares towards the rook of the given direction if the rook is there,
+     *  the squares up to it are empty and the king does not pass through or land on an attacked square */
+    private static int addCastlingMove(Board board, int[] moves, int count, int king, boolean isWhite, int direction) {
+        int row = king / Board.COLS;
+        int rookSquare = row * Board.COLS + ((direction > 0) ? Board.COLS - 1 : 0);
+        if ((board.getPieces(isWhite, Type.ROOK) & (1L << rookSquare)) == 0) return count;
+        if ((Bitboards.between(king, rookSquare) & board.getOccupied()) != 0) return count;
+        if (board.isSquareAttacked(king + direction, !isWhite)) return count;
+        if (board.isSquareAttacked(king + 2*direction, !isWhite)) return count;
+        moves[count++] = Move.encode(king, king + 2*direction, Type.KING, null, null, Move.FLAG_CASTLING);
+        return count;
+    }
+
+    /** Adds the pushes and captures of the pawn on the start square onto the allowed squares
+     *  (only captures and pushes that evolve into a queen if capturesOnly) */
+    private static int addPawnMoves(Board board, int[] moves, int count, int startSquare, long allowed,
+                                    int king, boolean isWhite, boolean capturesOnly) {
+        int forward = isWhite ? -Board.COLS : Board.COLS;
+        int startRow = isWhite ? Board.ROWS - 2 : 1;
+        int lastRow = isWhite ? 0 : Board.ROWS - 1;
+        Type[] promotions = capturesOnly ? QUEEN_PROMOTION : PROMOTION_TYPES;
+        long empty = ~board.getOccupied();
+        int finalSquare = startSquare + forward;
+        if ((empty & (1L << finalSquare)) != 0) {
+            if ((allowed & (1L << finalSquare)) != 0 && (!capturesOnly || finalSquare / Board.COLS == lastRow)) {
+                count = addPawnMove(board, moves, count, startSquare, finalSquare, promotions);
+            }
+            int doubleSquare = finalSquare + forward;
+            if (!capturesOnly && startSquare / Board.COLS == startRow && (empty & allowed & (1L << doubleSquare)) != 0) {
+                moves[count++] = Move.encode(startSquare, doubleSquare, Type.PAWN, null, null, Move.FLAG_DOUBLE_PUSH);
+            }
+        }
+        long attacks = Bitboards.PAWN_ATTACKS[Board.colourIndex(isWhite)][startSquare];
+        long targets = attacks & board.getPieces(!isWhite) & allowed;
+        while (targets != 0) {
+            count = addPawnMove(board, moves, count, startSquare, Long.numberOfTrailingZeros(targets), promotions);
+            targets &= targets - 1;
+        }
+        if (board.m_enPassant != null) {
+            int enPassant = board.m_enPassant.index();
+            if ((attacks & (1L << enPassant)) != 0 && isLegalEnPassant(board, startSquare, enPassant, king, isWhite)) {
+                moves[count++] = Move.encode(startSquare, enPassant, Type.PAWN, Type.PAWN, null, Move.FLAG_EN_PASSANT);
+            }
+        }
+        return count;
+    }
+
+    /** Adds a pawn move, once per given piece it can evolve into if it reaches the end of the board */
+    private static int addPawnMove(Board board, int[] moves, int count, int startSquare, int finalSquare,
+                                   Type[] promotions) {
+        int row = finalSquare / Board.COLS;
+        if (row == 0 || row == Board.ROWS - 1) {
+            for (Type promotion : promotions) {
+                moves[count++] = encode(board, startSquare, finalSquare, Type.PAWN, promotion, 0);
+            }
+        } else {
+            moves[count++] = encode(board, startSquare, finalSquare, Type.PAWN, null, 0);
+        }
+        return count;
+    }
+
+    /** En passant takes a pawn off a square the move does not land on, so pins and checks are tested on the
+     *  occupancy after the capture (this also finds the rare pin of both pawns along the row) */
+    private static boolean isLegalEnPassant(Board board, int startSquare, int finalSquare, int king, boolean isWhite) {
+        int capturedSquare = (startSquare / Board.COLS) * Board.COLS + finalSquare % Board.COLS;
+        long occupied = board.getOccupied() ^ (1L << startSquare) ^ (1L << capturedSquare) | (1L << finalSquare);
+        return (board.getAttackers(king, !isWhite, occupied) & ~(1L << capturedSquare)) == 0;
+    }
+}
@@ -0,0 +1,133 @@
+package chess;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.Random;
+
+/**
+ * Polyglot opening book (made by BookBuilder or any other program), read through a memory mapping
+ * so it never has to fit on the heap
+ * The file is a list of 16-byte big-endian entries sorted by key (unsigned):
+ *  key (8 bytes, see PolyglotKeys), move (2 bytes), weight (2 bytes), learn (4 bytes, unused)
+ *  move bits 0-2: final file, 3-5: final rank, 6-8: start file, 9-11: start rank,
+ *  12-14: promotion (1 knight, 2 bishop, 3 rook, 4 queen), castling is written as the king taking its rook
+ */
+public final class OpeningBook {
+
+    public static final int ENTRY_BYTES = 16;
+    /** Most moves one position can have in the book */
+    private static final int MAX_BOOK_MOVES = 64;
+    /** Polyglot promotion codes indexed by Type ordinal (pawns and kings cannot be promoted to) */
+    private static final int[] PROMOTION_CODES = {0, 3, 1, 2, 4, 0};
+
+    private final ByteBuffer m_entries;
+    private final int m_count;
+
+    private OpeningBook(ByteBuffer entries) {
+        m_entries = entries;
+        m_count = entries.capacity() / ENTRY_BYTES;
+    }
+
+    /** Maps the book file into memory, the file can be closed right away since the mapping stays valid */
+    public static OpeningBook open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size % ENTRY_BYTES != 0 || size > Integer.MAX_VALUE) {
+                throw new IOException("Not an opening book: " + path);
+            }
+            return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.BIG_ENDIAN));
+        }
+    }
+
+    /** Returns the number of entries in the book */
+    public int size() {
+        return m_count;
+    }
+
+    private long getKey(int index) {
+        return m_entries.getLong(index * ENTRY_BYTES);
+    }
+
+    /** Returns the index of the first entry whose key is not below the given key (binary search) */
+    private int findFirst(long key) {
+        int low = 0;
+        int high = m_count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (Long.compareUnsigned(getKey(middle), key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /** Writes the legal book moves of the position into moves and their weights into weights
+     *  and returns how many there are (moves in the book that are not legal in the position are left out) */
+    public int findMoves(Board board, int[] moves, int[] weights) {
+        long key = PolyglotKeys.getKey(board);
+        int[] legalMoves = new int[MoveGenerator.MAX_MOVES];
+        int legalCount = -1;
+        int count = 0;
+        for (int index = findFirst(key); index < m_count && getKey(index) == key && count < moves.length; index++) {
+            int bookMove = m_entries.getShort(index * ENTRY_BYTES + 8) & 0xFFFF;
+            int weight = m_entries.getShort(index * ENTRY_BYTES + 10) & 0xFFFF;
+            if (legalCount < 0) legalCount = board.generateLegalMoves(legalMoves);
+            for (int i = 0; i < legalCount; i++) {
+                if (toBookMove(legalMoves[i]) == bookMove) {
+                    moves[count] = legalMoves[i];
+                    weights[count++] = weight;
+                    break;
+                }
+            }
+        }
+        return count;
+    }
+
+    /** Picks one of the book moves of the position at random, each with a chance proportional to its weight,
+     *  or returns Move.NONE if the position is not in the book */
+    public int pickMove(Board board, Random random) {
+        int[] moves = new int[MAX_BOOK_MOVES];
+        int[] weights = new int[MAX_BOOK_MOVES];
+        int count = findMoves(board, moves, weights);
+        if (count == 0) return Move.NONE;
+        int total = 0;
+        for (int i = 0; i < count; i++) {
+            total += weights[i];
+        }
+        // a position whose moves all have weight 0 still picks uniformly
+        if (total == 0) return moves[random.nextInt(count)];
+        int pick = random.nextInt(total);
+        for (int i = 0; i < count; i++) {
+            pick -= weights[i];
+            if (pick < 0) return moves[i];
+        }
+        return moves[count - 1];
+    }
+
+    /** Converts a move from the MoveGenerator into the book's 16-bit move */
+    public static int toBookMove(int move) {
+        int startSquare = Move.getStart(move);
+        int finalSquare = Move.getFinal(move);
+        if ((Move.getFlags(move) & Move.FLAG_CASTLING) != 0) {
+            int row = startSquare / Board.COLS;
+            finalSquare = row * Board.COLS + ((finalSquare > startSquare) ? Board.COLS - 1 : 0);
+        }
+        // the book counts ranks from the white side, the board counts rows from the black side
+        int bookMove = (finalSquare ^ 56) | ((startSquare ^ 56) << 6);
+        Type promotion = Move.getPromotion(move);
+        if (promotion != null) bookMove |= PROMOTION_CODES[promotion.ordinal()] << 12;
+        return bookMove;
+    }
+
+    /** Writes one entry in the book's layout */
+    public static void writeEntry(DataOutput out, long key, int bookMove, int weight) throws IOException {
+        out.writeLong(key);
+        out.writeShort(bookMove);
+        out.writeShort(weight);
+        out.writeInt(0);
+    }
+}
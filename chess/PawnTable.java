@@ -0,0 +1,156 @@
+package chess;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size hash table of pawn structure evaluations, indexed by the pawn key of the board
+ * Pawns move far less often than the other pieces, so almost every evaluation is found in the table
+ * Each search thread owns its own table, each entry is two longs: the pawn key, then the data
+ *  data bits 0-15: middlegame points, 16-31: endgame points (both for white, signed),
+ *  32-59: pawn shield penalties (7 bits each: white king side, white queen side, black king side, black queen side),
+ *  62: set in every stored entry so an empty entry never matches
+ */
+public class PawnTable {
+
+    public static final int DEFAULT_ENTRIES = 1 << 14;
+
+    /** Penalty for every pawn on a column behind the first, middlegame and endgame */
+    private static final int DOUBLED_MIDGAME = 10;
+    private static final int DOUBLED_ENDGAME = 20;
+    /** Penalty for a pawn without pawns of its colour on the neighbouring columns */
+    private static final int ISOLATED_MIDGAME = 10;
+    private static final int ISOLATED_ENDGAME = 15;
+    /** Bonus for a pawn no enemy pawn can stop, indexed by the rows it has advanced */
+    private static final int[] PASSED_MIDGAME = {0, 5, 10, 15, 25, 40, 60, 0};
+    private static final int[] PASSED_ENDGAME = {0, 10, 15, 25, 45, 70, 110, 0};
+    /** Penalty for a column of the king's wing whose pawn moved one row, or is missing (middlegame only) */
+    private static final int SHIELD_ADVANCED = 10;
+    private static final int SHIELD_MISSING = 25;
+
+    private static final int SHIELD_BITS = 7;
+    private static final long VALID = 1L << 62;
+
+    /** Every square of a column, indexed by column */
+    private static final long[] COLUMNS = new long[Board.COLS];
+    /** Every square of the neighbouring columns, indexed by column */
+    private static final long[] NEIGHBOUR_COLUMNS = new long[Board.COLS];
+    /** Squares in front of a pawn on its own and the neighbouring columns, indexed by [colour][square] */
+    private static final long[][] PASSED_MASKS = new long[2][Board.SQUARES];
+
+    static {
+        for (int col = 0; col < Board.COLS; col++) {
+            for (int row = 0; row < Board.ROWS; row++) {
+                COLUMNS[col] |= 1L << (row * Board.COLS + col);
+            }
+        }
+        for (int col = 0; col < Board.COLS; col++) {
+            if (col > 0) NEIGHBOUR_COLUMNS[col] |= COLUMNS[col - 1];
+            if (col < Board.COLS - 1) NEIGHBOUR_COLUMNS[col] |= COLUMNS[col + 1];
+        }
+        for (int square = 0; square < Board.SQUARES; square++) {
+            int row = square / Board.COLS;
+            long columns = COLUMNS[square % Board.COLS] | NEIGHBOUR_COLUMNS[square % Board.COLS];
+            for (int r = 0; r < Board.ROWS; r++) {
+                long rowSquares = 0xFFL << (r * Board.COLS);
+                // white pawns move towards row 0
+                if (r < row) PASSED_MASKS[Board.WHITE][square] |= columns & rowSquares;
+                if (r > row) PASSED_MASKS[Board.BLACK][square] |= columns & rowSquares;
+            }
+        }
+    }
+
+    private final long[] m_table;
+    private final int m_mask;
+
+    /** Constructor taking the number of entries (rounded down to a power of two) */
+    public PawnTable(int entries) {
+        int size = Integer.highestOneBit(Math.max(1, entries));
+        m_table = new long[size * 2];
+        m_mask = size - 1;
+    }
+
+    /** Empties the table */
+    public void clear() {
+        Arrays.fill(m_table, 0L);
+    }
+
+    /** Returns the pawn structure points of the board for white, blended by the game phase like
+     *  Board.getAdvantagePoints, evaluating the pawns only if their structure is not in the table
+     *  The shield of each king is taken from the entry by the wing the king is on */
+    int evaluate(Board board, SearchStatistics statistics) {
+        long key = board.getPawnKey();
+        int index = ((int) key & m_mask) * 2;
+        long data = m_table[index + 1];
+        statistics.m_pawnProbes++;
+        if (m_table[index] == key && data != 0) {
+            statistics.m_pawnHits++;
+        } else {
+            data = computeStructure(board);
+            m_table[index] = key;
+            m_table[index + 1] = data;
+        }
+        int midgame = (short) data;
+        int endgame = (short) (data >>> 16);
+        midgame -= getShieldPenalty(data, Board.WHITE, board.getPieces(true, Type.KING));
+        midgame += getShieldPenalty(data, Board.BLACK, board.getPieces(false, Type.KING));
+        int phase = Math.min(board.getPhase(), Board.MAX_PHASE);
+        return (midgame*phase + endgame*(Board.MAX_PHASE - phase)) / Board.MAX_PHASE;
+    }
+
+    /** Returns the shield penalty of the wing the king is on, none while it stays on the middle columns */
+    private static int getShieldPenalty(long data, int colour, long king) {
+        if (king == 0) return 0;
+        int col = Long.numberOfTrailingZeros(king) % Board.COLS;
+        if (col > 2 && col < 5) return 0;
+        int slot = colour * 2 + ((col >= 5) ? 0 : 1);
+        return (int) (data >>> (32 + slot * SHIELD_BITS)) & ((1 << SHIELD_BITS) - 1);
+    }
+
+    /** Evaluates doubled, isolated and passed pawns and the shields of both wings, packed as described above */
+    private static long computeStructure(Board board) {
+        long[] pawns = {board.getPieces(true, Type.PAWN), board.getPieces(false, Type.PAWN)};
+        int midgame = 0;
+        int endgame = 0;
+        long shields = 0;
+        for (int colour = 0; colour < 2; colour++) {
+            int sign = (colour == Board.WHITE) ? 1 : -1;
+            long own = pawns[colour];
+            long enemy = pawns[1 - colour];
+            for (int col = 0; col < Board.COLS; col++) {
+                int count = Long.bitCount(own & COLUMNS[col]);
+                if (count > 1) {
+                    midgame -= sign * DOUBLED_MIDGAME * (count - 1);
+                    endgame -= sign * DOUBLED_ENDGAME * (count - 1);
+                }
+            }
+            for (long remaining = own; remaining != 0; remaining &= remaining - 1) {
+                int square = Long.numberOfTrailingZeros(remaining);
+                if ((own & NEIGHBOUR_COLUMNS[square % Board.COLS]) == 0) {
+                    midgame -= sign * ISOLATED_MIDGAME;
+                    endgame -= sign * ISOLATED_ENDGAME;
+                }
+                if ((enemy & PASSED_MASKS[colour][square]) == 0) {
+                    int row = square / Board.COLS;
+                    int advanced = (colour == Board.WHITE) ? Board.ROWS - 1 - row : row;
+                    midgame += sign * PASSED_MIDGAME[advanced];
+                    endgame += sign * PASSED_ENDGAME[advanced];
+                }
+            }
+            shields |= (long) computeShieldPenalty(own, colour, 5) << (32 + (colour * 2) * SHIELD_BITS);
+            shields |= (long) computeShieldPenalty(own, colour, 0) << (32 + (colour * 2 + 1) * SHIELD_BITS);
+        }
+        return VALID | shields | (long) (endgame & 0xFFFF) << 16 | (midgame & 0xFFFF);
+    }
+
+    /** Returns the penalty for the pawns missing in front of a king on the three columns from firstCol */
+    private static int computeShieldPenalty(long own, int colour, int firstCol) {
+        int firstRow = (colour == Board.WHITE) ? Board.ROWS - 2 : 1;
+        int secondRow = (colour == Board.WHITE) ? Board.ROWS - 3 : 2;
+        int penalty = 0;
+        for (int col = firstCol; col < firstCol + 3; col++) {
+            if ((own & (1L << (firstRow * Board.COLS + col))) != 0) continue;
+            penalty += ((own & (1L << (secondRow * Board.COLS + col))) != 0) ? SHIELD_ADVANCED : SHIELD_MISSING;
+        }
+        return penalty;
+    }
+}
@@ -0,0 +1,47 @@
+package chess;
+
+import jdk.jfr.*;
+
+/**
+ * Flight recorder event committed by ChessAI after every search
+ * The fields are named without the usual m_ prefix because they are the attribute names recordings show
+ */
+@Name("chess.Search")
+@Label("Chess Search")
+@Category("Chess")
+@Description("One search of the chess AI with its counters")
+class SearchEvent extends Event {
+
+    @Label("Threads")
+    int threads;
+
+    @Label("Depth")
+    int depth;
+
+    @Label("Score")
+    int score;
+
+    @Label("Nodes")
+    long nodes;
+
+    @Label("Leaf Evaluations")
+    long leafEvaluations;
+
+    @Label("Terminal Positions")
+    long terminalPositions;
+
+    @Label("Table Probes")
+    long tableProbes;
+
+    @Label("Table Hits")
+    long tableHits;
+
+    @Label("Beta Cutoffs")
+    long betaCutoffs;
+
+    @Label("First Move Cutoff Rate")
+    double firstMoveCutoffRate;
+
+    @Label("Effective Branching Factor")
+    double effectiveBranchingFactor;
+}
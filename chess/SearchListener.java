@@ -0,0 +1,12 @@
+package chess;
+
+/**
+ * Receives the progress of a search of ChessAI (see ChessAI.setSearchListener)
+ * It is called on the thread that called search, between two depths, so it should return quickly
+ */
+public interface SearchListener {
+
+    /** Called each time the main search thread completes a depth with the result so far
+     *  (nodes and time count from the start of the search) and the expected moves of both players */
+    void depthCompleted(SearchResult result, int[] principalVariation);
+}
@@ -0,0 +1,94 @@
+package chess;
+
+/**
+ * Keeps the result and counters of the last search of a ChessAI for JMX clients
+ * Written once per search by the searching thread and read by any thread
+ */
+class SearchMonitor implements SearchMonitorMXBean {
+
+    private volatile SearchResult m_lastResult;
+    private volatile SearchStatistics m_lastStatistics;
+    private volatile long m_searches;
+    private volatile long m_totalNodes;
+
+    /** Records a completed search (only called by the thread that searched) */
+    void record(SearchResult result, SearchStatistics statistics) {
+        m_lastResult = result;
+        m_lastStatistics = statistics;
+        m_searches++;
+        m_totalNodes += result.m_nodes;
+    }
+
+    public long getSearches() {
+        return m_searches;
+    }
+
+    public long getTotalNodes() {
+        return m_totalNodes;
+    }
+
+    public int getLastDepth() {
+        SearchResult result = m_lastResult;
+        return (result == null) ? 0 : result.m_depth;
+    }
+
+    public int getLastScore() {
+        SearchResult result = m_lastResult;
+        return (result == null) ? 0 : result.m_score;
+    }
+
+    public long getLastNodes() {
+        SearchResult result = m_lastResult;
+        return (result == null) ? 0 : result.m_nodes;
+    }
+
+    public long getLastMillis() {
+        SearchResult result = m_lastResult;
+        return (result == null) ? 0 : result.m_millis;
+    }
+
+    public long getLastNodesPerSecond() {
+        SearchResult result = m_lastResult;
+        return (result == null) ? 0 : result.getNodesPerSecond();
+    }
+
+    public long getLastLeafEvaluations() {
+        SearchStatistics statistics = m_lastStatistics;
+        return (statistics == null) ? 0 : statistics.getLeafEvaluations();
+    }
+
+    public long getLastTerminalPositions() {
+        SearchStatistics statistics = m_lastStatistics;
+        return (statistics == null) ? 0 : statistics.getTerminalPositions();
+    }
+
+    public double getLastTableHitRate() {
+        SearchStatistics statistics = m_lastStatistics;
+        return (statistics == null) ? 0 : statistics.getTableHitRate();
+    }
+
+    public double getLastPawnHitRate() {
+        SearchStatistics statistics = m_lastStatistics;
+        return (statistics == null) ? 0 : statistics.getPawnHitRate();
+    }
+
+    public long getLastBetaCutoffs() {
+        SearchStatistics statistics = m_lastStatistics;
+        return (statistics == null) ? 0 : statistics.getBetaCutoffs();
+    }
+
+    public double getLastFirstMoveCutoffRate() {
+        SearchStatistics statistics = m_lastStatistics;
+        return (statistics == null) ? 0 : statistics.getFirstMoveCutoffRate();
+    }
+
+    public double getLastEffectiveBranchingFactor() {
+        SearchStatistics statistics = m_lastStatistics;
+        return (statistics == null) ? 0 : statistics.getEffectiveBranchingFactor();
+    }
+
+    public String getLastSummary() {
+        SearchStatistics statistics = m_lastStatistics;
+        return (statistics == null) ? "" : statistics.toSummary();
+    }
+}
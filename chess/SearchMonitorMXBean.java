@@ -0,0 +1,37 @@
+package chess;
+
+/**
+ * Management interface of the searches of one ChessAI (see ChessAI.registerMBean)
+ */
+public interface SearchMonitorMXBean {
+
+    long getSearches();
+
+    long getTotalNodes();
+
+    int getLastDepth();
+
+    int getLastScore();
+
+    long getLastNodes();
+
+    long getLastMillis();
+
+    long getLastNodesPerSecond();
+
+    long getLastLeafEvaluations();
+
+    long getLastTerminalPositions();
+
+    double getLastTableHitRate();
+
+    double getLastPawnHitRate();
+
+    long getLastBetaCutoffs();
+
+    double getLastFirstMoveCutoffRate();
+
+    double getLastEffectiveBranchingFactor();
+
+    String getLastSummary();
+}
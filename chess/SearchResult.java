@@ -0,0 +1,28 @@
+package chess;
+
+/**
+ * Outcome of one search by ChessAI
+ * The score is from the point of view of the player to move at the root
+ */
+public class SearchResult {
+
+    public final int m_move;
+    public final int m_score;
+    public final int m_depth;
+    public final long m_nodes;
+    public final long m_millis;
+
+    /** Constructor */
+    public SearchResult(int move, int score, int depth, long nodes, long millis) {
+        m_move = move;
+        m_score = score;
+        m_depth = depth;
+        m_nodes = nodes;
+        m_millis = millis;
+    }
+
+    /** Returns the number of positions searched per second */
+    public long getNodesPerSecond() {
+        return (m_millis == 0) ? m_nodes * 1000 : m_nodes * 1000 / m_millis;
+    }
+}
@@ -0,0 +1,215 @@
+package chess;
+
+import java.util.Arrays;
+
+/**
+ * Counters of one search
+ * Every search thread counts into its own instance (no sharing, no atomics), ChessAI adds them up afterwards
+ */
+public class SearchStatistics {
+
+    /** Beta cutoffs are counted by the index of the cutting move, the last slot counts every later index */
+    public static final int CUTOFF_SLOTS = 8;
+
+    long m_nodes;
+    long m_leafEvaluations;
+    /** Positions scored as checkmate, stalemate, repetition or the turn limit without searching further */
+    long m_terminalPositions;
+    long m_tableProbes;
+    long m_tableHits;
+    /** Positions scored exactly by the endgame bitbases */
+    long m_bitbaseHits;
+    /** Pawn structure evaluations, and those found in the pawn table */
+    long m_pawnProbes;
+    long m_pawnHits;
+    long[] m_cutoffsByMoveIndex = new long[CUTOFF_SLOTS];
+    // work saved by the selective search
+    long m_nullMoveCutoffs;
+    long m_razored;
+    long m_futilityPrunes;
+    long m_reductions;
+    /** Reduced moves that beat alpha and had to be searched again at full depth */
+    long m_researches;
+    /** Nodes and milliseconds spent on each completed depth of the main thread's iterative deepening */
+    long[] m_nodesByDepth = new long[ChessAI.MAX_DEPTH + 1];
+    long[] m_millisByDepth = new long[ChessAI.MAX_DEPTH + 1];
+    int m_depth;
+
+    /** Sets every counter back to zero */
+    void clear() {
+        m_nodes = 0;
+        m_leafEvaluations = 0;
+        m_terminalPositions = 0;
+        m_tableProbes = 0;
+        m_tableHits = 0;
+        m_bitbaseHits = 0;
+        m_pawnProbes = 0;
+        m_pawnHits = 0;
+        Arrays.fill(m_cutoffsByMoveIndex, 0);
+        m_nullMoveCutoffs = 0;
+        m_razored = 0;
+        m_futilityPrunes = 0;
+        m_reductions = 0;
+        m_researches = 0;
+        Arrays.fill(m_nodesByDepth, 0);
+        Arrays.fill(m_millisByDepth, 0);
+        m_depth = 0;
+    }
+
+    /** Takes the completed depths of the main thread's search */
+    void copyDepths(SearchStatistics main) {
+        m_depth = main.m_depth;
+        System.arraycopy(main.m_nodesByDepth, 0, m_nodesByDepth, 0, m_nodesByDepth.length);
+        System.arraycopy(main.m_millisByDepth, 0, m_millisByDepth, 0, m_millisByDepth.length);
+    }
+
+    /** Adds the counters of another thread (except the completed depths, see copyDepths) */
+    void add(SearchStatistics other) {
+        m_nodes += other.m_nodes;
+        m_leafEvaluations += other.m_leafEvaluations;
+        m_terminalPositions += other.m_terminalPositions;
+        m_tableProbes += other.m_tableProbes;
+        m_tableHits += other.m_tableHits;
+        m_bitbaseHits += other.m_bitbaseHits;
+        m_pawnProbes += other.m_pawnProbes;
+        m_pawnHits += other.m_pawnHits;
+        for (int i = 0; i < CUTOFF_SLOTS; i++) {
+            m_cutoffsByMoveIndex[i] += other.m_cutoffsByMoveIndex[i];
+        }
+        m_nullMoveCutoffs += other.m_nullMoveCutoffs;
+        m_razored += other.m_razored;
+        m_futilityPrunes += other.m_futilityPrunes;
+        m_reductions += other.m_reductions;
+        m_researches += other.m_researches;
+    }
+
+    /** Records a beta cutoff by the move of the given index in the ordered move list */
+    void countCutoff(int moveIndex) {
+        m_cutoffsByMoveIndex[Math.min(moveIndex, CUTOFF_SLOTS - 1)]++;
+    }
+
+    /** Records that the main thread completed a depth */
+    void completeDepth(int depth, long nodes, long millis) {
+        m_depth = depth;
+        m_nodesByDepth[depth] = nodes;
+        m_millisByDepth[depth] = millis;
+    }
+
+    public long getNodes() {
+        return m_nodes;
+    }
+
+    public long getLeafEvaluations() {
+        return m_leafEvaluations;
+    }
+
+    public long getTerminalPositions() {
+        return m_terminalPositions;
+    }
+
+    public long getTableProbes() {
+        return m_tableProbes;
+    }
+
+    public long getTableHits() {
+        return m_tableHits;
+    }
+
+    public long getBitbaseHits() {
+        return m_bitbaseHits;
+    }
+
+    /** Returns the fraction of table probes that found their position */
+    public double getTableHitRate() {
+        return (m_tableProbes == 0) ? 0 : (double) m_tableHits / m_tableProbes;
+    }
+
+    public long getPawnProbes() {
+        return m_pawnProbes;
+    }
+
+    public long getPawnHits() {
+        return m_pawnHits;
+    }
+
+    /** Returns the fraction of pawn structure evaluations found in the pawn table */
+    public double getPawnHitRate() {
+        return (m_pawnProbes == 0) ? 0 : (double) m_pawnHits / m_pawnProbes;
+    }
+
+    public long getBetaCutoffs() {
+        long cutoffs = 0;
+        for (long count : m_cutoffsByMoveIndex) {
+            cutoffs += count;
+        }
+        return cutoffs;
+    }
+
+    /** Returns the number of beta cutoffs by the move of the given index (the last slot includes all later ones) */
+    public long getCutoffs(int moveIndex) {
+        return m_cutoffsByMoveIndex[Math.min(moveIndex, CUTOFF_SLOTS - 1)];
+    }
+
+    /** Returns the fraction of beta cutoffs made by the first move searched, a measure of move ordering */
+    public double getFirstMoveCutoffRate() {
+        long cutoffs = getBetaCutoffs();
+        return (cutoffs == 0) ? 0 : (double) m_cutoffsByMoveIndex[0] / cutoffs;
+    }
+
+    public long getNullMoveCutoffs() {
+        return m_nullMoveCutoffs;
+    }
+
+    public long getRazored() {
+        return m_razored;
+    }
+
+    public long getFutilityPrunes() {
+        return m_futilityPrunes;
+    }
+
+    public long getReductions() {
+        return m_reductions;
+    }
+
+    public long getResearches() {
+        return m_researches;
+    }
+
+    /** Returns the deepest depth the main thread completed */
+    public int getDepth() {
+        return m_depth;
+    }
+
+    /** Returns the nodes the main thread spent on the given completed depth */
+    public long getNodes(int depth) {
+        return m_nodesByDepth[depth];
+    }
+
+    /** Returns the milliseconds the main thread spent on the given completed depth */
+    public long getMillis(int depth) {
+        return m_millisByDepth[depth];
+    }
+
+    /** Returns how many times more nodes the last completed depth took than the one before it */
+    public double getEffectiveBranchingFactor() {
+        if (m_depth < 2 || m_nodesByDepth[m_depth - 1] == 0) return 0;
+        return (double) m_nodesByDepth[m_depth] / m_nodesByDepth[m_depth - 1];
+    }
+
+    /** Returns the counters as one line of text */
+    public String toSummary() {
+        StringBuilder depths = new StringBuilder();
+        for (int depth = 1; depth <= m_depth; depth++) {
+            if (m_nodesByDepth[depth] == 0) continue;
+            if (depths.length() > 0) depths.append(' ');
+            depths.append(depth).append(':').append(m_millisByDepth[depth]).append("ms");
+        }
+        return String.format("nodes %d, leaves %d, terminal %d, bitbase hits %d, hash hits %.1f%%, pawn hits %.1f%%, "
+                             + "cutoffs %d (%.1f%% first move), null move cutoffs %d, razored %d, futile %d, "
+                             + "reduced %d (%d searched again), branching %.2f, time per depth [%s]", m_nodes,
+                             m_leafEvaluations, m_terminalPositions, m_bitbaseHits, 100*getTableHitRate(),
+                             100*getPawnHitRate(), getBetaCutoffs(), 100*getFirstMoveCutoffRate(), m_nullMoveCutoffs, m_razored,
+                             m_futilityPrunes, m_reductions, m_researches, getEffectiveBranchingFactor(), depths);
+    }
+}
@@ -0,0 +1,530 @@
+package chess;
+
+import chess.pieces.*;
+import java.util.*;
+
+/**
+ * One thread of the search of ChessAI
+ * Everything it mutates (its board copy, move buffers, killer and history tables, pawn table, counters)
+ * is confined to its thread, only the transposition table is shared between workers
+ * Only MATE_SCORE is public, for the tools that report mate scores
+ */
+public class SearchWorker {
+
+    static final int INFINITY = 32000;
+    /** Score of being checkmated at the root, a mate found further away scores one less per ply */
+    public static final int MATE_SCORE = 30000;
+    /** Number of positions between two checks of the clock and the stop flag */
+    private static final int CLOCK_CHECK_INTERVAL = 1024;
+
+    // move ordering bands: the hash move, then captures, then killers, then quiet moves sorted by history
+    private static final int HASH_MOVE_ORDER = 3000000;
+    private static final int CAPTURE_ORDER = 2000000;
+    private static final int KILLER_ORDER = 1000000;
+    private static final int HISTORY_LIMIT = 500000;
+    /** Relative piece values for ordering captures, indexed by Type ordinal */
+    private static final int[] ORDER_VALUES = {1, 4, 2, 3, 5, 6};
+    /** Material values for delta pruning, indexed by Type ordinal */
+    private static final int[] PIECE_VALUES = {100, 500, 320, 330, 900, 0};
+    /** A capture is skipped in the quiescence search if even winning the piece plus this margin cannot raise alpha */
+    private static final int DELTA_MARGIN = 200;
+
+    // selective search: see ChessAI for the switches
+    /** Null move pruning searches the pass this many plies shallower (one more from depth 7) */
+    private static final int NULL_MOVE_REDUCTION = 2;
+    private static final int NULL_MOVE_MIN_DEPTH = 3;
+    /** Quiet moves from this index of the ordered list onwards are reduced, from depth 3 */
+    private static final int LATE_MOVE_INDEX = 3;
+    private static final int LATE_MOVE_MIN_DEPTH = 3;
+    /** Margin by which the evaluation must stay below alpha to skip quiet moves, indexed by remaining depth */
+    private static final int[] FUTILITY_MARGINS = {0, 200, 450};
+    /** Margin by which the evaluation must stay below alpha to razor, indexed by remaining depth */
+    private static final int[] RAZOR_MARGINS = {0, 300, 550};
+    /** Scores beyond this are mates, which no pruning margin may be compared with */
+    private static final int MATE_BOUND = MATE_SCORE - Board.MAX_PLY;
+
+    private final ChessAI m_owner;
+    private final TranspositionTable m_table;
+    private final PawnTable m_pawnTable;
+    private final BoardHistory m_history;
+    private final int m_id;
+    private Board m_board;
+    private int[][] m_moves;
+    private int[][] m_moveOrder;
+    private int[][] m_killers;
+    private int[][][] m_historyHeuristic;
+    private long m_hardDeadline;
+    private final SearchStatistics m_stats;
+    private boolean m_aborted;
+    private boolean m_canAbort;
+    private boolean m_nullMovePruning;
+    private boolean m_lateMoveReductions;
+    private boolean m_futilityPruning;
+    private boolean m_razoring;
+    private EndgameBitbases m_bitbases;
+
+    /** Constructor, worker 0 is the main worker whose result is played */
+    SearchWorker(ChessAI owner, TranspositionTable table, BoardHistory history, int id) {
+        m_owner = owner;
+        m_table = table;
+        m_pawnTable = new PawnTable(PawnTable.DEFAULT_ENTRIES);
+        m_history = history;
+        m_id = id;
+        m_moves = new int[Board.MAX_PLY][MoveGenerator.MAX_MOVES];
+        m_moveOrder = new int[Board.MAX_PLY][MoveGenerator.MAX_MOVES];
+        m_killers = new int[Board.MAX_PLY][2];
+        m_historyHeuristic = new int[2][Board.SQUARES][Board.SQUARES];
+        m_stats = new SearchStatistics();
+    }
+
+    /** Writes all valid moves of the player to move into the move buffer of the ply
+     *  A pawn reaching the end is added once per piece it can evolve into */
+    private int generateMoves(int ply) {
+        return MoveGenerator.generateLegalMoves(m_board, m_moves[ply]);
+    }
+
+    /** Gives every move of the ply an ordering score: the hash move, then captures by most valuable
+     *  victim then least valuable attacker, then the killer moves of the ply, then quiet moves by history */
+    private void orderMoves(int ply, int count, int hashMove) {
+        int[] moves = m_moves[ply];
+        int[] order = m_moveOrder[ply];
+        int colour = Board.colourIndex(m_board.m_whiteTurn);
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            Type promotion = Move.getPromotion(move);
+            if (move == hashMove) {
+                order[i] = HASH_MOVE_ORDER;
+            } else if (Move.isCapture(move) || promotion == Type.QUEEN) {
+                Type victim = Move.getCaptured(move);
+                int victimValue = (victim == null) ? 0 : ORDER_VALUES[victim.ordinal()];
+                if (promotion != null) victimValue += ORDER_VALUES[promotion.ordinal()];
+                order[i] = CAPTURE_ORDER + 8*victimValue - ORDER_VALUES[Move.getMoved(move).ordinal()];
+            } else if (move == m_killers[ply][0]) {
+                order[i] = KILLER_ORDER + 1;
+            } else if (move == m_killers[ply][1]) {
+                order[i] = KILLER_ORDER;
+            } else {
+                order[i] = m_historyHeuristic[colour][Move.getStart(move)][Move.getFinal(move)];
+            }
+        }
+    }
+
+    /** Swaps the best ordered move from index onwards into index and returns it */
+    private int pickNextMove(int ply, int index, int count) {
+        int[] moves = m_moves[ply];
+        int[] order = m_moveOrder[ply];
+        int best = index;
+        for (int i = index + 1; i < count; i++) {
+            if (order[i] > order[best]) best = i;
+        }
+        int move = moves[best];
+        moves[best] = moves[index];
+        moves[index] = move;
+        int score = order[best];
+        order[best] = order[index];
+        order[index] = score;
+        return move;
+    }
+
+    /** Remembers a quiet move that caused a beta cutoff as a killer of the ply and in the history table */
+    private void updateQuietCutoff(int ply, int depth, int move) {
+        if (m_killers[ply][0] != move) {
+            m_killers[ply][1] = m_killers[ply][0];
+            m_killers[ply][0] = move;
+        }
+        int[] history = m_historyHeuristic[Board.colourIndex(m_board.m_whiteTurn)][Move.getStart(move)];
+        history[Move.getFinal(move)] += depth*depth;
+        if (history[Move.getFinal(move)] > HISTORY_LIMIT) ageHistory();
+    }
+
+    /** Halves the history table so recent cutoffs weigh more than old ones */
+    private void ageHistory() {
+        for (int[][] colour : m_historyHeuristic) {
+            for (int[] history : colour) {
+                for (int i = 0; i < history.length; i++) {
+                    history[i] /= 2;
+                }
+            }
+        }
+    }
+
+    /** Probes the shared transposition table, counting probes and hits for this thread */
+    private long probeTable(long key) {
+        m_stats.m_tableProbes++;
+        long entry = m_table.probe(key);
+        if (entry != TranspositionTable.MISS) m_stats.m_tableHits++;
+        return entry;
+    }
+
+    /** Returns the evaluation of the position for white: the points of the pieces on their squares
+     *  plus the pawn structure, which this thread's pawn table mostly has already */
+    private int evaluate(Board board) {
+        return board.getAdvantagePoints() + m_pawnTable.evaluate(board, m_stats);
+    }
+
+    /** Negamax alpha-beta search returning the score for the player to move
+     *  Looks ahead depth moves given that the opponent will look ahead depth - 1 moves
+     *  Unless the player is in check the search is selective: a pass that still fails high cuts the
+     *  position off (null move), positions far below alpha next to the horizon are razored or skip their
+     *  quiet moves (futility) and quiet moves ordered late are searched less deep first (reductions) */
+    private int alphaBeta(int depth, int ply, int alpha, int beta, boolean nullAllowed) {
+        Board board = m_board;
+        SearchStatistics stats = m_stats;
+        if (++stats.m_nodes % CLOCK_CHECK_INTERVAL == 0) checkForAbort();
+        if (m_aborted) return 0;
+        if (isRepetition(board)) {
+            stats.m_terminalPositions++;
+            return 0;
+        }
+        if (m_bitbases != null) {
+            int result = m_bitbases.probe(board);
+            if (result != EndgameBitbases.NOT_FOUND) {
+                stats.m_bitbaseHits++;
+                return toBitbaseScore(result, ply);
+            }
+        }
+        if (depth == 0) return quiescence(ply, alpha, beta);
+
+        long key = board.getKey();
+        long entry = probeTable(key);
+        int hashMove = Move.NONE;
+        if (entry != TranspositionTable.MISS) {
+            hashMove = TranspositionTable.getMove(entry);
+            if (TranspositionTable.getDepth(entry) >= depth) {
+                int score = fromTableScore(TranspositionTable.getScore(entry), ply);
+                int bound = TranspositionTable.getBound(entry);
+                if (bound == TranspositionTable.EXACT
+                ||  bound == TranspositionTable.LOWER && score >= beta
+                ||  bound == TranspositionTable.UPPER && score <= alpha) {
+                    return score;
+                }
+            }
+        }
+
+        int count = generateMoves(ply);
+        boolean checked = board.isKingChecked(board.m_whiteTurn);
+        if (count == 0) {
+            stats.m_terminalPositions++;
+            return checked ? -(MATE_SCORE - ply) : 0;
+        }
+        if (board.reachedTurnLimit()) {
+            stats.m_terminalPositions++;
+            return 0;
+        }
+
+        // margins mean nothing next to mate scores, and without a bound there is nothing to prune against
+        boolean belowAlpha = !checked && Math.abs(alpha) < MATE_BOUND;
+        boolean aboveBeta = !checked && Math.abs(beta) < MATE_BOUND;
+        int evaluation = (belowAlpha || aboveBeta) ? (board.m_whiteTurn ? 1 : -1) * evaluate(board) : 0;
+        if (belowAlpha && m_razoring && depth < RAZOR_MARGINS.length && evaluation + RAZOR_MARGINS[depth] <= alpha) {
+            int score = quiescence(ply, alpha, beta);
+            if (m_aborted) return 0;
+            if (depth == 1 || score <= alpha) {
+                stats.m_razored++;
+                return score;
+            }
+        }
+        if (aboveBeta && m_nullMovePruning && nullAllowed && depth >= NULL_MOVE_MIN_DEPTH && evaluation >= beta
+        &&  hasPiecesBesidesPawns(board, board.m_whiteTurn)) {
+            int reduction = NULL_MOVE_REDUCTION + ((depth > 6) ? 1 : 0);
+            board.makeNullMove();
+            int score = -alphaBeta(Math.max(0, depth-1-reduction), ply+1, -beta, -beta+1, false);
+            board.unmakeNullMove();
+            if (m_aborted) return 0;
+            if (score >= beta) {
+                stats.m_nullMoveCutoffs++;
+                return beta;
+            }
+        }
+        boolean futile = belowAlpha && m_futilityPruning && depth < FUTILITY_MARGINS.length
+                      && evaluation + FUTILITY_MARGINS[depth] <= alpha;
+
+        orderMoves(ply, count, hashMove);
+        int originalAlpha = alpha;
+        int max = -INFINITY;
+        int bestMove = Move.NONE;
+        for (int i = 0; i < count; i++) {
+            int move = pickNextMove(ply, i, count);
+            boolean quiet = !Move.isCapture(move) && Move.getPromotion(move) == null;
+            board.makeMove(move);
+            boolean reducible = quiet && i > 0 && !board.isKingChecked(board.m_whiteTurn);
+            if (futile && reducible) {
+                // the move cannot raise alpha, so its best hope is the bound it is skipped with
+                board.unmakeMove();
+                stats.m_futilityPrunes++;
+                if (evaluation + FUTILITY_MARGINS[depth] > max) max = evaluation + FUTILITY_MARGINS[depth];
+                continue;
+            }
+            int prediction;
+            if (m_lateMoveReductions && !checked && reducible && i >= LATE_MOVE_INDEX && depth >= LATE_MOVE_MIN_DEPTH
+            &&  move != m_killers[ply][0] && move != m_killers[ply][1]) {
+                int reduction = (i >= 2*LATE_MOVE_INDEX && depth >= 6) ? 2 : 1;
+                stats.m_reductions++;
+                prediction = -alphaBeta(depth-1-reduction, ply+1, -alpha-1, -alpha, true);
+                if (prediction > alpha && !m_aborted) {
+                    stats.m_researches++;
+                    prediction = -alphaBeta(depth-1, ply+1, -beta, -alpha, true);
+                }
+            } else {
+                prediction = -alphaBeta(depth-1, ply+1, -beta, -alpha, true);
+            }
+            board.unmakeMove();
+            if (m_aborted) return 0;
+            if (prediction > max) {
+                max = prediction;
+                bestMove = move;
+                if (max > alpha) alpha = max;
+                if (alpha >= beta) {
+                    stats.countCutoff(i);
+                    if (quiet) updateQuietCutoff(ply, depth, move);
+                    break;
+                }
+            }
+        }
+        int bound = (max <= originalAlpha) ? TranspositionTable.UPPER
+                  : (max >= beta) ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+        m_table.store(key, bestMove, toTableScore(max, ply), depth, bound);
+        return max;
+    }
+
+    /** Returns true if the player has a piece other than pawns and the king, without which passing the turn
+     *  is often the best move (zugzwang) and null move pruning would be wrong */
+    private static boolean hasPiecesBesidesPawns(Board board, boolean isWhite) {
+        return (board.getPieces(isWhite) & ~board.getPieces(isWhite, Type.PAWN) & ~board.getPieces(isWhite, Type.KING)) != 0;
+    }
+
+    /** Searches only captures and queen promotions until the position is quiet, so the evaluation is never
+     *  taken in the middle of an exchange
+     *  The player to move may stand pat on the evaluation instead of capturing, except when in check where
+     *  every evasion is searched; captures that cannot raise alpha even with a margin are skipped (delta pruning) */
+    private int quiescence(int ply, int alpha, int beta) {
+        Board board = m_board;
+        SearchStatistics stats = m_stats;
+        if (++stats.m_nodes % CLOCK_CHECK_INTERVAL == 0) checkForAbort();
+        if (m_aborted) return 0;
+        if (board.reachedTurnLimit()) {
+            stats.m_terminalPositions++;
+            return 0;
+        }
+        boolean checked = board.isKingChecked(board.m_whiteTurn) && ply < Board.MAX_PLY - 1;
+        int standPat = -INFINITY;
+        int count;
+        if (checked) {
+            count = generateMoves(ply);
+            if (count == 0) {
+                stats.m_terminalPositions++;
+                return -(MATE_SCORE - ply);
+            }
+        } else {
+            stats.m_leafEvaluations++;
+            int factor = board.m_whiteTurn ? 1 : -1;
+            standPat = factor*evaluate(board);
+            if (standPat >= beta || ply >= Board.MAX_PLY - 1) return standPat;
+            if (standPat > alpha) alpha = standPat;
+            count = board.generateLegalCaptures(m_moves[ply]);
+        }
+
+        orderMoves(ply, count, Move.NONE);
+        int max = standPat;
+        for (int i = 0; i < count; i++) {
+            int move = pickNextMove(ply, i, count);
+            if (!checked) {
+                Type captured = Move.getCaptured(move);
+                int gain = (captured == null) ? 0 : PIECE_VALUES[captured.ordinal()];
+                if (Move.getPromotion(move) != null) gain += PIECE_VALUES[Type.QUEEN.ordinal()] - PIECE_VALUES[Type.PAWN.ordinal()];
+                if (standPat + gain + DELTA_MARGIN <= alpha) continue;
+            }
+            board.makeMove(move);
+            int score = -quiescence(ply+1, -beta, -alpha);
+            board.unmakeMove();
+            if (m_aborted) return 0;
+            if (score > max) {
+                max = score;
+                if (max > alpha) alpha = max;
+                if (alpha >= beta) {
+                    stats.countCutoff(i);
+                    break;
+                }
+            }
+        }
+        return max;
+    }
+
+    /** Stops the search once the owner asked every worker to stop or the main worker passed the hard deadline
+     *  The main worker always completes depth 1 first, so a search never ends without a move */
+    private void checkForAbort() {
+        if (m_canAbort && (m_owner.isStopped() || System.nanoTime() >= m_hardDeadline)) {
+            m_aborted = true;
+        }
+    }
+
+    /** Returns true if the position repeats one earlier in the search or would be the third time in the game */
+    private boolean isRepetition(Board board) {
+        return board.isRepetition() || m_history.foundRecentlyNTimes(board, 2);
+    }
+
+    /** Converts a bitbase result into a score, mates further away than the search can see are clamped to that */
+    private static int toBitbaseScore(int result, int ply) {
+        if (result == EndgameBitbases.DRAW) return 0;
+        int matePly = Math.min(ply + (result & ~EndgameBitbases.LOSS), Board.MAX_PLY - 1);
+        return ((result & EndgameBitbases.LOSS) != 0) ? -(MATE_SCORE - matePly) : MATE_SCORE - matePly;
+    }
+
+    /** Mate scores are stored relative to the stored position instead of the root */
+    private static int toTableScore(int score, int ply) {
+        if (score > MATE_SCORE - Board.MAX_PLY) return score + ply;
+        if (score < -MATE_SCORE + Board.MAX_PLY) return score - ply;
+        return score;
+    }
+
+    /** Converts a stored mate score back to be relative to the root */
+    private static int fromTableScore(int score, int ply) {
+        if (score > MATE_SCORE - Board.MAX_PLY) return score - ply;
+        if (score < -MATE_SCORE + Board.MAX_PLY) return score + ply;
+        return score;
+    }
+
+    /** Writes the moves of the root into the root buffer, leaving out moves that would repeat a position
+     *  for the third time (unless every move would), ordered with the hash move first */
+    private int generateRootMoves() {
+        Board board = m_board;
+        int count = generateMoves(0);
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            int move = m_moves[0][i];
+            board.makeMove(move);
+            boolean repeats = Move.getMoved(move) != Type.PAWN
+                           && m_history.foundRecentlyNTimes(board, 2);
+            board.unmakeMove();
+            if (!repeats) m_moves[0][kept++] = move;
+        }
+        if (kept == 0) kept = generateMoves(0);
+        long entry = m_table.probe(board.getKey());
+        orderMoves(0, kept, (entry == TranspositionTable.MISS) ? Move.NONE : TranspositionTable.getMove(entry));
+        for (int i = 0; i < kept; i++) {
+            pickNextMove(0, i, kept);
+        }
+        return kept;
+    }
+
+    /** Searches every root move to the given depth and collects all moves of optimal result into bestMoves
+     *  Each move is searched with a window just below the best score so ties are scored exactly
+     *  Afterwards the root moves are sorted by score so the next iteration searches the best first */
+    private int searchRoot(int depth, int count, List<Integer> bestMoves) {
+        Board board = m_board;
+        int[] moves = m_moves[0];
+        int[] scores = m_moveOrder[0];
+        int max = -INFINITY;
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            board.makeMove(move);
+            int prediction = -alphaBeta(depth-1, 1, -INFINITY, -(max - 1), true);
+            board.unmakeMove();
+            if (m_aborted) return max;
+            scores[i] = prediction;
+            if (prediction > max) {
+                max = prediction;
+                bestMoves.clear();
+            }
+            if (prediction >= max) bestMoves.add(move);
+        }
+        // stable insertion sort keeps the earlier (better ordered) move first among equal scores
+        for (int i = 1; i < count; i++) {
+            int move = moves[i];
+            int score = scores[i];
+            int j = i - 1;
+            while (j >= 0 && scores[j] < score) {
+                moves[j + 1] = moves[j];
+                scores[j + 1] = scores[j];
+                j--;
+            }
+            moves[j + 1] = move;
+            scores[j + 1] = score;
+        }
+        return max;
+    }
+
+    /** Searches a copy of the board one ply deeper at a time until the maximum depth, a forced mate,
+     *  the soft deadline or a stop request, collecting the optimal moves of the last completed depth
+     *  Helper workers (id > 0) skip every other depth on odd ids so the workers spread over the depths */
+    SearchResult iterativeDeepening(Board board, List<Integer> bestMoves, int maxDepth,
+                                    long startTime, long softDeadline, long hardDeadline) {
+        m_board = new Board(board);
+        m_hardDeadline = hardDeadline;
+        m_stats.clear();
+        m_aborted = false;
+        m_canAbort = m_id > 0;
+        m_nullMovePruning = m_owner.isNullMovePruning();
+        m_lateMoveReductions = m_owner.isLateMoveReductions();
+        m_futilityPruning = m_owner.isFutilityPruning();
+        m_razoring = m_owner.isRazoring();
+        m_bitbases = m_owner.getBitbases();
+        for (int[] killers : m_killers) {
+            Arrays.fill(killers, Move.NONE);
+        }
+        ageHistory();
+
+        int count = generateRootMoves();
+        if (count == 0) {
+            // checkmated or stalemated at the root: nothing to search and no move to play
+            bestMoves.clear();
+            m_stats.m_terminalPositions++;
+            int terminalScore = m_board.isKingChecked(m_board.m_whiteTurn) ? -MATE_SCORE : 0;
+            return new SearchResult(Move.NONE, terminalScore, 0, 0, (System.nanoTime() - startTime) / 1000000);
+        }
+        List<Integer> iterationMoves = new ArrayList<Integer>();
+        int score = 0;
+        int depth = 0;
+        int step = (m_id % 2 == 1) ? 2 : 1;
+        int nextDepth = 1;
+        while (nextDepth <= maxDepth) {
+            iterationMoves.clear();
+            long iterationStart = System.nanoTime();
+            long iterationNodes = m_stats.m_nodes;
+            int iterationScore = searchRoot(nextDepth, count, iterationMoves);
+            if (m_aborted) break;
+            depth = nextDepth;
+            m_stats.completeDepth(depth, m_stats.m_nodes - iterationNodes, (System.nanoTime() - iterationStart) / 1000000);
+            score = iterationScore;
+            bestMoves.clear();
+            bestMoves.addAll(iterationMoves);
+            if (m_id == 0 && !bestMoves.isEmpty()) m_owner.completeDepth(depth, score, getPrincipalVariation(bestMoves.get(0), depth), startTime);
+            m_canAbort = true;
+            if (Math.abs(score) > MATE_SCORE - Board.MAX_PLY || count == 1) break;
+            if (System.nanoTime() >= softDeadline) break;
+            nextDepth = depth + ((depth == 1) ? 1 : step);
+        }
+        long millis = (System.nanoTime() - startTime) / 1000000;
+        int move = bestMoves.isEmpty() ? Move.NONE : bestMoves.get(0);
+        return new SearchResult(move, score, depth, m_stats.m_nodes, millis);
+    }
+
+    /** Returns the expected line of play starting with the given root move, following the moves stored in the
+     *  transposition table for as long as they are legal and the line does not repeat a position */
+    private int[] getPrincipalVariation(int move, int maxLength) {
+        Board board = m_board;
+        int[] line = new int[maxLength];
+        int length = 0;
+        while (move != Move.NONE && length < maxLength) {
+            line[length++] = move;
+            board.makeMove(move);
+            if (board.isRepetition()) break;
+            long entry = m_table.probe(board.getKey());
+            int hashMove = (entry == TranspositionTable.MISS) ? Move.NONE : TranspositionTable.getMove(entry);
+            move = Move.NONE;
+            int count = generateMoves(length);
+            for (int i = 0; i < count; i++) {
+                if (m_moves[length][i] == hashMove) move = hashMove;
+            }
+        }
+        for (int i = 0; i < length; i++) {
+            board.unmakeMove();
+        }
+        return Arrays.copyOf(line, length);
+    }
+
+    /** Returns the counters of this worker's last search */
+    SearchStatistics getStatistics() {
+        return m_stats;
+    }
+}
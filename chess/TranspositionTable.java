@@ -0,0 +1,101 @@
+package chess;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size hash table of searched positions backed by one flat long[]
+ * It is shared by all search threads without locks: an entry whose two longs were written by
+ * different threads fails the key check and reads as a miss
+ * Each bucket holds a depth-preferred entry and an always-replace entry, each entry is
+ * two longs: the position key xor-ed with the data, then the data
+ *  data bits 0-31: best move, 32-47: score, 48-55: depth, 56-57: bound, 58-63: search age
+ */
+public class TranspositionTable {
+
+    public static final int EXACT = 0;
+    /** The score is at least the stored score (the search failed high) */
+    public static final int LOWER = 1;
+    /** The score is at most the stored score (the search failed low) */
+    public static final int UPPER = 2;
+    /** Returned by probe when the position is not in the table (no valid entry has bound 3) */
+    public static final long MISS = -1L;
+
+    private static final int LONGS_PER_BUCKET = 4;
+    private static final int BYTES_PER_BUCKET = LONGS_PER_BUCKET * Long.BYTES;
+    private static final int AGE_MASK = 0x3F;
+
+    private final long[] m_table;
+    private final int m_bucketMask;
+    private volatile int m_age;
+
+    /** Constructor taking the size of the table in megabytes (rounded down to a power of two buckets) */
+    public TranspositionTable(int megabytes) {
+        long buckets = Long.highestOneBit(Math.max(1L, ((long) megabytes << 20) / BYTES_PER_BUCKET));
+        buckets = Math.min(buckets, Integer.highestOneBit((Integer.MAX_VALUE - 8) / LONGS_PER_BUCKET));
+        m_table = new long[(int) buckets * LONGS_PER_BUCKET];
+        m_bucketMask = (int) buckets - 1;
+    }
+
+    /** Starts a new search so entries of older searches are replaced first */
+    public void newSearch() {
+        m_age = (m_age + 1) & AGE_MASK;
+    }
+
+    /** Empties the table */
+    public void clear() {
+        Arrays.fill(m_table, 0L);
+    }
+
+    private int bucketIndex(long key) {
+        return ((int) key & m_bucketMask) * LONGS_PER_BUCKET;
+    }
+
+    /** Returns the data stored for the key or MISS */
+    public long probe(long key) {
+        int index = bucketIndex(key);
+        for (int i = index; i < index + LONGS_PER_BUCKET; i += 2) {
+            long data = m_table[i + 1];
+            if ((m_table[i] ^ data) == key && data != 0) {
+                return data;
+            }
+        }
+        return MISS;
+    }
+
+    /** Stores the result of a search of the key's position
+     *  The first entry of a bucket keeps the deepest search of the current age, the second is always replaced */
+    public void store(long key, int move, int score, int depth, int bound) {
+        int age = m_age;
+        long data = (move & 0xFFFFFFFFL) | ((long) (score & 0xFFFF) << 32) | ((long) (depth & 0xFF) << 48)
+                  | ((long) bound << 56) | ((long) age << 58);
+        int index = bucketIndex(key);
+        long preferred = m_table[index + 1];
+        if ((m_table[index] ^ preferred) == key || getAge(preferred) != age || depth >= getDepth(preferred)) {
+            m_table[index] = key ^ data;
+            m_table[index + 1] = data;
+        } else {
+            m_table[index + 2] = key ^ data;
+            m_table[index + 3] = data;
+        }
+    }
+
+    public static int getMove(long data) {
+        return (int) data;
+    }
+
+    public static int getScore(long data) {
+        return (short) (data >>> 32);
+    }
+
+    public static int getDepth(long data) {
+        return (int) (data >>> 48) & 0xFF;
+    }
+
+    public static int getBound(long data) {
+        return (int) (data >>> 56) & 0x3;
+    }
+
+    private static int getAge(long data) {
+        return (int) (data >>> 58) & AGE_MASK;
+    }
+}
@@ -0,0 +1,274 @@
+package chess;
+
+import mytools.Coordinates;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.*;
+
+/**
+ * Plays through the Universal Chess Interface on standard input and output, for chess GUIs and tournament managers
+ * Commands are read on the main thread while ChessAI searches on a dedicated search thread,
+ * so stop and isready are answered during a search
+ * Supported: uci, setoption (Hash, Threads), isready, ucinewgame, position startpos|fen ... [moves ...],
+ *  go [depth n] [movetime ms] [wtime ms] [btime ms] [winc ms] [binc ms] [movestogo n] [infinite], stop, quit
+ */
+public class UciMain {
+
+    private static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+    /** Moves still to play assumed by the clock when the GUI does not say */
+    private static final int DEFAULT_MOVES_TO_GO = 30;
+    /** Milliseconds kept back from every clock budget for the GUI and the process */
+    private static final long MOVE_OVERHEAD_MILLIS = 20;
+    /** Time budget that never runs out before the depth limit */
+    private static final long UNLIMITED_MILLIS = Long.MAX_VALUE / 2000000;
+
+    private final Board m_board = new Board();
+    private final BoardHistory m_history = new BoardHistory();
+    private ChessAI m_AI;
+    private int m_threads = 1;
+    private final ExecutorService m_searchThread = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "chess-uci-search");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Future<?> m_search;
+    /** Released by stop for a search of go infinite, which must not report its move before that */
+    private CountDownLatch m_stopLatch = new CountDownLatch(0);
+
+    private UciMain() {
+        m_board.init();
+        createAI(ChessAI.DEFAULT_TABLE_MEGABYTES);
+    }
+
+    private void createAI(int megabytes) {
+        if (m_AI != null) m_AI.shutdown();
+        m_AI = new ChessAI(m_board, m_history, megabytes);
+        m_AI.setThreads(m_threads);
+        m_AI.setSearchListener(this::sendInfo);
+    }
+
+    /** Writes one line to the GUI, lines from the search thread and the command thread never interleave */
+    private synchronized void send(String line) {
+        System.out.println(line);
+        System.out.flush();
+    }
+
+    /** Formats a score as UCI centipawns or moves to mate */
+    private static String formatScore(int score) {
+        int distance = SearchWorker.MATE_SCORE - Math.abs(score);
+        if (distance >= Board.MAX_PLY) return "cp " + score;
+        int moves = (distance + 1) / 2;
+        return "mate " + ((score > 0) ? moves : -moves);
+    }
+
+    private void sendInfo(SearchResult result, int[] principalVariation) {
+        StringBuilder pv = new StringBuilder();
+        for (int move : principalVariation) {
+            pv.append(' ').append(Move.toText(move));
+        }
+        send(String.format("info depth %d score %s nodes %d nps %d time %d pv%s", result.m_depth,
+                           formatScore(result.m_score), result.m_nodes, result.getNodesPerSecond(), result.m_millis, pv));
+    }
+
+    /** Sets up the position: position startpos|fen <fen> [moves <move>...] */
+    private void setPosition(String[] tokens) {
+        int index = 1;
+        String fen = START_FEN;
+        if (index < tokens.length && tokens[index].equals("fen")) {
+            StringBuilder fields = new StringBuilder();
+            for (index++; index < tokens.length && !tokens[index].equals("moves"); index++) {
+                fields.append(tokens[index]).append(' ');
+            }
+            fen = fields.toString();
+        } else if (index < tokens.length && tokens[index].equals("startpos")) {
+            index++;
+        }
+        try {
+            m_board.loadFen(fen);
+        } catch (IllegalArgumentException e) {
+            send("info string " + e.getMessage());
+            m_board.init();
+        }
+        m_history.clear();
+        if (index < tokens.length && tokens[index].equals("moves")) {
+            for (index++; index < tokens.length; index++) {
+                int move = Move.fromText(m_board, tokens[index]);
+                if (move == Move.NONE) {
+                    send("info string Illegal move " + tokens[index]);
+                    return;
+                }
+                m_history.addBoard(m_board);
+                m_board.moveSelectedPiece(Coordinates.of(Move.getStart(move)), Coordinates.of(Move.getFinal(move)));
+                if (m_board.pawnReachedEnd()) m_board.evolvePawn(Move.getPromotionSymbol(move));
+            }
+        }
+    }
+
+    /** Starts a search on the search thread that reports bestmove when it ends */
+    private void go(String[] tokens) {
+        stopSearch();
+        int depth = ChessAI.MAX_DEPTH;
+        long moveTime = -1;
+        long time = -1;
+        long increment = 0;
+        int movesToGo = DEFAULT_MOVES_TO_GO;
+        boolean infinite = false;
+        for (int i = 1; i < tokens.length; i++) {
+            String value = (i + 1 < tokens.length) ? tokens[i + 1] : "0";
+            try {
+                switch (tokens[i]) {
+                    case "depth":
+                        depth = Integer.parseInt(value);
+                        break;
+                    case "movetime":
+                        moveTime = Long.parseLong(value);
+                        break;
+                    case "wtime":
+                        if (m_board.m_whiteTurn) time = Long.parseLong(value);
+                        break;
+                    case "btime":
+                        if (!m_board.m_whiteTurn) time = Long.parseLong(value);
+                        break;
+                    case "winc":
+                        if (m_board.m_whiteTurn) increment = Long.parseLong(value);
+                        break;
+                    case "binc":
+                        if (!m_board.m_whiteTurn) increment = Long.parseLong(value);
+                        break;
+                    case "movestogo":
+                        movesToGo = Math.max(1, Integer.parseInt(value));
+                        break;
+                    case "infinite":
+                        infinite = true;
+                        break;
+                    default:
+                        continue;
+                }
+            } catch (NumberFormatException e) {
+                // a garbled value leaves that limit at its default rather than ending the engine
+                send("info string Invalid value " + value + " for " + tokens[i]);
+            }
+        }
+        long budget = UNLIMITED_MILLIS;
+        if (moveTime >= 0) {
+            // the search stops starting new depths after half of its budget, so the whole move time is the hard limit
+            budget = Math.max(1, moveTime - MOVE_OVERHEAD_MILLIS);
+        } else if (time >= 0 && !infinite) {
+            budget = Math.max(1, Math.min(time / movesToGo + increment * 3 / 4, time / 2) - MOVE_OVERHEAD_MILLIS);
+        }
+        m_AI.setMaxDepth(depth);
+        m_AI.setTimeBudget(budget);
+
+        CountDownLatch stopLatch = new CountDownLatch(infinite ? 1 : 0);
+        m_stopLatch = stopLatch;
+        // cleared here rather than on the search thread, so a stop that arrives before the search begins still ends it
+        m_AI.prepareSearch();
+        m_search = m_searchThread.submit(() -> {
+            int move = Move.NONE;
+            String ponder = "";
+            try {
+                move = m_AI.searchPrepared().m_move;
+                try {
+                    stopLatch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                int[] principalVariation = m_AI.getPrincipalVariation();
+                if (principalVariation.length > 1 && principalVariation[0] == move) {
+                    ponder = " ponder " + Move.toText(principalVariation[1]);
+                }
+            } finally {
+                // the GUI waits for bestmove whatever happened, 0000 when there is no move (checkmate, stalemate or a failure)
+                send("bestmove " + ((move == Move.NONE) ? "0000" : Move.toText(move)) + ponder);
+            }
+        });
+    }
+
+    /** Stops a running search and waits until it reported its move
+     *  A search that failed is reported to the GUI here */
+    private void stopSearch() {
+        if (m_search == null) return;
+        m_stopLatch.countDown();
+        m_AI.stop();
+        try {
+            m_search.get();
+        } catch (ExecutionException e) {
+            send("info string Search failed: " + e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        m_search = null;
+    }
+
+    /** Applies setoption name <name> value <value> for the Hash and Threads options */
+    private void setOption(String line) {
+        int nameIndex = line.indexOf(" name ");
+        int valueIndex = line.indexOf(" value ");
+        if (nameIndex < 0 || valueIndex < nameIndex) return;
+        String name = line.substring(nameIndex + 6, valueIndex).trim();
+        String value = line.substring(valueIndex + 7).trim();
+        try {
+            if (name.equalsIgnoreCase("Hash")) {
+                createAI(Math.max(1, Integer.parseInt(value)));
+            } else if (name.equalsIgnoreCase("Threads")) {
+                m_threads = Math.max(1, Integer.parseInt(value));
+                m_AI.setThreads(m_threads);
+            } else {
+                send("info string Unknown option " + name);
+            }
+        } catch (NumberFormatException e) {
+            send("info string Invalid value " + value + " for " + name);
+        }
+    }
+
+    /** Reads and answers commands until quit or the end of the input */
+    private void run() throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty()) continue;
+            String[] tokens = line.split("\\s+");
+            switch (tokens[0]) {
+                case "uci":
+                    send("id name Huang Console Chess");
+                    send("id author Huang");
+                    send("option name Hash type spin default " + ChessAI.DEFAULT_TABLE_MEGABYTES + " min 1 max 4096");
+                    send("option name Threads type spin default 1 min 1 max " + Runtime.getRuntime().availableProcessors());
+                    send("uciok");
+                    break;
+                case "isready":
+                    send("readyok");
+                    break;
+                case "setoption":
+                    stopSearch();
+                    setOption(line);
+                    break;
+                case "ucinewgame":
+                    stopSearch();
+                    m_AI.clearTable();
+                    break;
+                case "position":
+                    stopSearch();
+                    setPosition(tokens);
+                    break;
+                case "go":
+                    go(tokens);
+                    break;
+                case "stop":
+                    stopSearch();
+                    break;
+                case "quit":
+                    stopSearch();
+                    return;
+                default:
+                    send("info string Unknown command " + tokens[0]);
+            }
+        }
+        stopSearch();
+    }
+
+    public static void main(String[] args) throws IOException {
+        new UciMain().run();
+    }
+}
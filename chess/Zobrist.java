@@ -0,0 +1,45 @@
+package chess;
+
+import java.util.Random;
+
+/**
+ * Random keys xor-ed together into the 64-bit hash of a position
+ * The seed is fixed so the same position hashes the same way in every run
+ */
+public final class Zobrist {
+
+    /** Key of a piece on a square, indexed by [colour][type ordinal][square] */
+    public static final long[][][] PIECES = new long[2][Type.values().length][Board.SQUARES];
+    /** Key present whenever it is black's turn */
+    public static final long BLACK_TO_MOVE;
+    /** Key of every combination of castling rights (see Board.CASTLING_*) */
+    public static final long[] CASTLING = new long[16];
+    /** Key of the column of the en passant square */
+    public static final long[] EN_PASSANT = new long[Board.COLS];
+
+    static {
+        Random random = new Random(0x5EEDC4E55L);
+        for (long[][] colour : PIECES) {
+            for (long[] type : colour) {
+                for (int square = 0; square < Board.SQUARES; square++) {
+                    type[square] = random.nextLong();
+                }
+            }
+        }
+        BLACK_TO_MOVE = random.nextLong();
+        long[] rights = new long[4];
+        for (int i = 0; i < rights.length; i++) {
+            rights[i] = random.nextLong();
+        }
+        for (int combination = 0; combination < CASTLING.length; combination++) {
+            for (int i = 0; i < rights.length; i++) {
+                if ((combination & (1 << i)) != 0) CASTLING[combination] ^= rights[i];
+            }
+        }
+        for (int col = 0; col < Board.COLS; col++) {
+            EN_PASSANT[col] = random.nextLong();
+        }
+    }
+
+    private Zobrist() {}
+}
@@ -1,16 +1,19 @@
 package chess.pieces;
 import chess.*;
 import mytools.Coordinates;
-import java.util.Set;
 
 public class Bishop extends Piece {
 
+    private static final PositionTable POSITION_VALUES = PositionTable.load("Bishop.txt");
+
     /** Constructor */
     public Bishop(Board board, Coordinates rc, boolean isWhite) {
         super(board, rc, isWhite);
         m_type = Type.BISHOP;
         m_power = 330;
-        ReadFileToPositionValues("Bishop.txt");
+        m_phaseWeight = 1;
+        m_valueByPosition = POSITION_VALUES;
+        m_endgameValueByPosition = POSITION_VALUES;
     }
 
     /** Copy constructor */
@@ -18,15 +21,9 @@ public class Bishop extends Piece {
         super(board, otherPiece);
     }
 
-    /** Adds all valid moves by this piece into set of validMoves */
-    public void getValidMoves(Set<Coordinates> validMoves, boolean toMovePiece) {
-        m_tempRC = m_rc;
-        for (byte i = -1; i <= 1; i += 2) {
-            for (byte j = -1; j <= 1; j += 2) {
-                addValidPath(validMoves, toMovePiece, i, j);
-            }
-        }
-        m_rc = m_tempRC;
+    /** Returns the bitboard of squares attacked by this piece from its current square */
+    public long getAttacks() {
+        return Bitboards.bishopAttacks(getSquare(), m_board.getOccupied());
     }
 
     /** Paints this piece on the board */
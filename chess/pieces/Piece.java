@@ -2,7 +2,6 @@ package chess.pieces;
 import chess.*;
 import mytools.Coordinates;
 import java.util.Set;
-import java.io.*;
 
 public abstract class Piece {
 
@@ -10,9 +9,12 @@ public abstract class Piece {
     public Type m_type;
     public Coordinates m_rc;
     protected final Board m_board;
-    protected Coordinates m_tempRC;
-    protected int[][] m_valueByPosition;
+    protected PositionTable m_valueByPosition;
+    /** Position values once most pieces are traded (the same table unless overridden) */
+    protected PositionTable m_endgameValueByPosition;
     protected int m_power;
+    /** How much this piece counts towards the game not being an endgame yet */
+    protected int m_phaseWeight;
     protected final int m_factor;
 
     /** Constructor */
@@ -21,7 +23,6 @@ public abstract class Piece {
         m_isWhite = isWhite;
         m_factor = isWhite ? 1 : -1;
         m_rc = rc;
-        m_valueByPosition = new int[Board.ROWS][Board.COLS];
     }
 
     /** Copy constructor for piece on another board */
@@ -29,100 +30,48 @@ public abstract class Piece {
         this(board, otherPiece.m_rc, otherPiece.m_isWhite);
         m_type = otherPiece.m_type;
         m_power = otherPiece.m_power;
-        for (byte row = 0; row < Board.ROWS; row++) {
-            for (byte col = 0; col < Board.COLS; col++) {
-                m_valueByPosition[row][col] = otherPiece.m_valueByPosition[row][col];
-            }
-        }
-    }
-
-    /** Reads the file given filename to inputs into 2D array m_valueByPosition */
-    protected void ReadFileToPositionValues(String fileName) {
-        BufferedReader br = null;
-        String dir = "chess/pieces/";
-        try {
-            br = new BufferedReader(new FileReader(dir + fileName));
-            for (byte row = 0; row < Board.ROWS; row++) {
-                String line = br.readLine();
-                String[] values = line.split(",");
-                for (byte col = 0; col < Board.COLS; col++) {
-                    m_valueByPosition[row][col] = Integer.parseInt(values[col].trim());
-                }
-            }
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
-        } finally {
-            try {
-                if (br != null) br.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
+        m_phaseWeight = otherPiece.m_phaseWeight;
+        m_valueByPosition = otherPiece.m_valueByPosition;
+        m_endgameValueByPosition = otherPiece.m_endgameValueByPosition;
     }
 
-    /** Returns true if the given coordinate is outside the board or the same as original position */
-    protected boolean outOfBounds(Coordinates rc) {
-        return (rc.equals(m_tempRC) || rc.m_row < 0 || rc.m_col < 0 
-            ||  rc.m_row >= Board.ROWS || rc.m_col >= Board.COLS);
+    /** Returns the square index of this piece */
+    public int getSquare() {
+        return m_rc.index();
     }
 
-    /** Checks whether the given coordinate is already occupied by your own piece */
-    protected boolean occupiedBySelf(Coordinates rc) {
-        Piece otherPiece = m_board.getPieceAtCoordinate(rc);
-        return (otherPiece != null && otherPiece.m_isWhite == m_isWhite);
-    }
+    /** Returns the bitboard of squares attacked by this piece from its current square */
+    public abstract long getAttacks();
 
-    /** Checks whether the given coordinate is already occupied by an enemy piece */
-    protected boolean occupiedByEnemy(Coordinates rc) {
-        Piece otherPiece = m_board.getPieceAtCoordinate(rc);
-        return (otherPiece != null && otherPiece.m_isWhite != m_isWhite);
-    }
-
-    /** If out of bounds or occupied by self returns false, otherwise adds 
-     *  the coordinate rc to validMoves if king is not checked at the new move
-     *  A version of some piece's getValidMoves will always be in the call stack */
-    protected boolean addMoveSucceeded(Set<Coordinates> validMoves, Coordinates rc, boolean toMovePiece) {
-        if (outOfBounds(rc) || occupiedBySelf(rc)) return false;
+    /** Adds all valid moves by this piece into set of validMoves
+     *  Moves that would leave the king checked are left out if toMovePiece (see MoveGenerator),
+     *  otherwise these are the attacked squares not occupied by pieces of the same colour */
+    public void getValidMoves(Set<Coordinates> validMoves, boolean toMovePiece) {
         if (toMovePiece) {
-            Piece pieceReplaced = m_board.moveSelectedPiece(m_tempRC, rc, false);
-            if (!m_board.isKingChecked(m_isWhite)) validMoves.add(rc);
-            m_board.resetBoardToStartOfTurn(pieceReplaced, m_tempRC, rc);
-        } else {
-            validMoves.add(rc);
+            m_board.addValidMoves(getSquare(), validMoves);
+            return;
         }
-        return true;
-    }
-
-    /** Takes in an incrementer by row and col (eg -1, 0, or 1) and adds 
-     *  coordinates in that direction until the edge of the board or another piece is encountered */
-    protected void addValidPath(Set<Coordinates> validMoves, boolean toMovePiece, int rowIncr, int colIncr) {
-        int row = m_tempRC.m_row + rowIncr;
-        int col = m_tempRC.m_col + colIncr;
-        while (true) {
-            Coordinates rc = new Coordinates(row, col);
-            if (!addMoveSucceeded(validMoves, rc, toMovePiece) || occupiedByEnemy(rc)) break;
-            row += rowIncr;
-            col += colIncr;
+        long targets = getAttacks() & ~m_board.getPieces(m_isWhite);
+        while (targets != 0) {
+            validMoves.add(Coordinates.of(Long.numberOfTrailingZeros(targets)));
+            targets &= targets - 1;
         }
     }
 
-    /** Adds all valid moves by this piece into set of validMoves */
-    public abstract void getValidMoves(Set<Coordinates> validMoves, boolean toMovePiece);
-
-    /** Updates variables when this piece is moved (does nothing by default) */
-    public void updateWhenMoved() {}
+    /** Gets the value of the power of this piece on the given square before the endgame
+     *  (positive for white, the table is flipped vertically for black) */
+    public int getMidgameValue(int square) {
+        return m_factor*(m_power + m_valueByPosition.getValue(square, m_isWhite));
+    }
 
-    /** Gets the value of the position of this piece */
-    private int getPositionValue(Coordinates rc) {
-        int row = (m_isWhite) ? rc.m_row : Board.ROWS - 1 - rc.m_row;
-        return m_factor*m_valueByPosition[row][rc.m_col];
+    /** Gets the value of the power of this piece on the given square in the endgame */
+    public int getEndgameValue(int square) {
+        return m_factor*(m_power + m_endgameValueByPosition.getValue(square, m_isWhite));
     }
 
-    /** Gets the value of the power of this piece */
-    public int getPowerValue() {
-        return m_power*m_factor + getPositionValue(m_rc);
+    /** Gets how much this piece counts towards the game not being an endgame yet */
+    public int getPhaseWeight() {
+        return m_phaseWeight;
     }
 
 
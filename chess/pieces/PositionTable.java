@@ -0,0 +1,39 @@
+package chess.pieces;
+import chess.*;
+import java.io.*;
+
+/**
+ * Immutable table of the value of a piece on each square, from white's point of view
+ * Each table is parsed once from a resource next to this class and shared by all pieces of its type
+ */
+public final class PositionTable {
+
+    private final int[] m_values;
+
+    private PositionTable(int[] values) {
+        m_values = values;
+    }
+
+    /** Reads the table from the comma separated resource with the given filename (8 rows of 8 values) */
+    static PositionTable load(String fileName) {
+        int[] values = new int[Board.SQUARES];
+        InputStream stream = PositionTable.class.getResourceAsStream(fileName);
+        if (stream == null) throw new IllegalStateException("Missing position values " + fileName);
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(stream, "US-ASCII"))) {
+            for (int row = 0; row < Board.ROWS; row++) {
+                String[] line = br.readLine().split(",");
+                for (int col = 0; col < Board.COLS; col++) {
+                    values[row * Board.COLS + col] = Integer.parseInt(line[col].trim());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read position values " + fileName, e);
+        }
+        return new PositionTable(values);
+    }
+
+    /** Gets the value of the square for a piece of the given colour (the table is flipped vertically for black) */
+    public int getValue(int square, boolean isWhite) {
+        return m_values[isWhite ? square : square ^ (Board.SQUARES - Board.COLS)];
+    }
+}
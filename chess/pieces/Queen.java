@@ -1,16 +1,19 @@
 package chess.pieces;
 import chess.*;
 import mytools.Coordinates;
-import java.util.Set;
 
 public class Queen extends Piece {
 
+    private static final PositionTable POSITION_VALUES = PositionTable.load("Queen.txt");
+
     /** Constructor */
     public Queen(Board board, Coordinates rc, boolean isWhite) {
         super(board, rc, isWhite);
         m_type = Type.QUEEN;
         m_power = 900;
-        ReadFileToPositionValues("Queen.txt");
+        m_phaseWeight = 4;
+        m_valueByPosition = POSITION_VALUES;
+        m_endgameValueByPosition = POSITION_VALUES;
     }
 
     /** Copy constructor */
@@ -18,15 +21,9 @@ public class Queen extends Piece {
         super(board, otherPiece);
     }
 
-    /** Adds all valid moves by this piece into set of validMoves */
-    public void getValidMoves(Set<Coordinates> validMoves, boolean toMovePiece) {
-        m_tempRC = m_rc;
-        for (byte i = -1; i <= 1; i++) {
-            for (byte j = -1; j <= 1; j++) {
-                addValidPath(validMoves, toMovePiece, i, j);
-            }
-        }
-        m_rc = m_tempRC;
+    /** Returns the bitboard of squares attacked by this piece from its current square */
+    public long getAttacks() {
+        return Bitboards.queenAttacks(getSquare(), m_board.getOccupied());
     }
 
     /** Paints this piece on the board */
@@ -0,0 +1,20 @@
+package chess.tools;
+
+import chess.EndgameBitbases;
+import java.io.IOException;
+import java.nio.file.*;
+
+/**
+ * Generates the endgame bitbases of EndgameBitbases into a directory and reports what they contain
+ * Usage: java chess.tools.BitbaseGenerator [directory] (default: bitbases)
+ */
+public class BitbaseGenerator {
+
+    public static void main(String[] args) throws IOException {
+        Path directory = Paths.get((args.length > 0) ? args[0] : "bitbases");
+        EndgameBitbases bitbases = EndgameBitbases.generate(directory);
+        System.out.printf("Generated in %d ms on %d processors into %s%n", bitbases.getGenerationMillis(),
+                          Runtime.getRuntime().availableProcessors(), directory.toAbsolutePath());
+        System.out.print(bitbases.toSummary());
+    }
+}
@@ -0,0 +1,211 @@
+package chess.tools;
+
+import chess.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Builds a Polyglot opening book for OpeningBook from games in PGN
+ * Every move of the first plies of every game is counted for the position it was played in,
+ * weighted 2 for a win, 1 for a draw (or an unknown result) and 0 for a loss of the player who made it
+ * Usage: java chess.tools.BookBuilder [options] games.pgn...
+ *   --out file      book to write (default: book.bin)
+ *   --plies n       plies of each game to count (default: 20)
+ *   --min-games n   leave out moves played in fewer games (default: 2)
+ */
+public class BookBuilder {
+
+    /** Statistics of one move in one position */
+    private static class BookMove {
+        int m_games;
+        long m_weight;
+    }
+
+    private final int m_plies;
+    /** Moves of every position by Polyglot key, then by book move */
+    private final Map<Long, Map<Integer, BookMove>> m_positions = new HashMap<Long, Map<Integer, BookMove>>();
+    private final Board m_board = new Board();
+    private int m_games;
+    private int m_skippedGames;
+
+    private BookBuilder(int plies) {
+        m_plies = plies;
+    }
+
+    /** Reads the games of a PGN file one at a time: tag lines start a game, the result ends its moves */
+    private void readGames(Path path) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.ISO_8859_1)) {
+            Map<String, String> tags = new HashMap<String, String>();
+            StringBuilder moveText = new StringBuilder();
+            boolean inComment = false;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.startsWith("[")) {
+                    inComment = false;
+                    if (moveText.length() > 0) {
+                        addGame(tags, moveText.toString());
+                        tags.clear();
+                        moveText.setLength(0);
+                    }
+                    int space = line.indexOf(' ');
+                    int quote = line.indexOf('"');
+                    if (space > 1 && quote > space) {
+                        tags.put(line.substring(1, space), line.substring(quote + 1, Math.max(quote + 1, line.lastIndexOf('"'))));
+                    }
+                } else if (!line.startsWith("%")) {
+                    // a ; comment outside braces runs to the end of its line
+                    for (int i = 0; i < line.length(); i++) {
+                        char c = line.charAt(i);
+                        if (c == '{' || c == '}') {
+                            inComment = c == '{';
+                        } else if (c == ';' && !inComment) {
+                            line = line.substring(0, i);
+                            break;
+                        }
+                    }
+                    moveText.append(line).append(' ');
+                }
+            }
+            if (moveText.length() > 0) addGame(tags, moveText.toString());
+        }
+    }
+
+    /** Removes comments, variations and annotation glyphs from the move text */
+    private static String stripMoveText(String moveText) {
+        StringBuilder text = new StringBuilder();
+        int variations = 0;
+        boolean inComment = false;
+        for (int i = 0; i < moveText.length(); i++) {
+            char c = moveText.charAt(i);
+            if (inComment) {
+                if (c == '}') inComment = false;
+            } else if (c == '{') {
+                inComment = true;
+            } else if (c == '(') {
+                variations++;
+            } else if (c == ')') {
+                variations = Math.max(0, variations - 1);
+            } else if (variations == 0) {
+                text.append(c);
+            }
+        }
+        return text.toString().replaceAll("\\$\\d+", " ").replaceAll("\\d+\\.(\\.\\.)?", " ");
+    }
+
+    /** Plays the first plies of a game from the starting position and counts their moves */
+    private void addGame(Map<String, String> tags, String moveText) {
+        if (tags.containsKey("FEN") || "1".equals(tags.get("SetUp"))) {
+            m_skippedGames++;
+            return;
+        }
+        String result = tags.getOrDefault("Result", "*");
+        m_board.init();
+        List<Long> keys = new ArrayList<Long>();
+        List<Integer> moves = new ArrayList<Integer>();
+        for (String san : stripMoveText(moveText).trim().split("\\s+")) {
+            if (san.isEmpty()) continue;
+            if (san.equals("1-0") || san.equals("0-1") || san.equals("1/2-1/2") || san.equals("*")) {
+                result = san;
+                break;
+            }
+            if (moves.size() >= m_plies) continue;
+            int move = Move.fromSan(m_board, san);
+            if (move == Move.NONE) {
+                m_skippedGames++;
+                return;
+            }
+            keys.add(PolyglotKeys.getKey(m_board));
+            moves.add(OpeningBook.toBookMove(move));
+            m_board.makeMove(move);
+        }
+
+        m_games++;
+        for (int ply = 0; ply < moves.size(); ply++) {
+            boolean whiteMoved = ply % 2 == 0;
+            int weight;
+            if (result.equals("1-0")) {
+                weight = whiteMoved ? 2 : 0;
+            } else if (result.equals("0-1")) {
+                weight = whiteMoved ? 0 : 2;
+            } else {
+                weight = 1;
+            }
+            BookMove bookMove = m_positions.computeIfAbsent(keys.get(ply), key -> new HashMap<Integer, BookMove>())
+                                           .computeIfAbsent(moves.get(ply), move -> new BookMove());
+            bookMove.m_games++;
+            bookMove.m_weight += weight;
+        }
+    }
+
+    /** Writes the moves played in at least minGames games sorted by key (unsigned) then by weight,
+     *  scaling the weights of a position down if the best one does not fit in 16 bits, and returns the entry count */
+    private int write(Path path, int minGames) throws IOException {
+        List<Long> keys = new ArrayList<Long>(m_positions.keySet());
+        keys.sort(Long::compareUnsigned);
+        int entries = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            for (long key : keys) {
+                List<Map.Entry<Integer, BookMove>> moves = new ArrayList<Map.Entry<Integer, BookMove>>();
+                long maxWeight = 0;
+                for (Map.Entry<Integer, BookMove> entry : m_positions.get(key).entrySet()) {
+                    if (entry.getValue().m_games < minGames) continue;
+                    moves.add(entry);
+                    maxWeight = Math.max(maxWeight, entry.getValue().m_weight);
+                }
+                moves.sort((a, b) -> Long.compare(b.getValue().m_weight, a.getValue().m_weight));
+                for (Map.Entry<Integer, BookMove> entry : moves) {
+                    long weight = entry.getValue().m_weight;
+                    if (maxWeight > 0xFFFF) weight = weight * 0xFFFF / maxWeight;
+                    OpeningBook.writeEntry(out, key, entry.getKey(), (int) weight);
+                    entries++;
+                }
+            }
+        }
+        return entries;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path out = Paths.get("book.bin");
+        int plies = 20;
+        int minGames = 2;
+        List<Path> inputs = new ArrayList<Path>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--out":
+                    out = Paths.get(args[++i]);
+                    break;
+                case "--plies":
+                    plies = Integer.parseInt(args[++i]);
+                    break;
+                case "--min-games":
+                    minGames = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    if (args[i].startsWith("--")) {
+                        System.err.println("Unknown option " + args[i]);
+                        System.exit(2);
+                    }
+                    inputs.add(Paths.get(args[i]));
+            }
+        }
+        if (inputs.isEmpty()) {
+            System.err.println("Usage: java chess.tools.BookBuilder [--out file] [--plies n] [--min-games n] games.pgn...");
+            System.exit(2);
+        }
+        if (plies < 1 || plies >= Board.MAX_PLY) {
+            System.err.println("Plies must be between 1 and " + (Board.MAX_PLY - 1));
+            System.exit(2);
+        }
+
+        BookBuilder builder = new BookBuilder(plies);
+        for (Path input : inputs) {
+            builder.readGames(input);
+        }
+        int entries = builder.write(out, minGames);
+        System.out.printf("%d games read (%d skipped), %d positions, %d entries written to %s%n", builder.m_games,
+                          builder.m_skippedGames, builder.m_positions.size(), entries, out);
+    }
+}
@@ -0,0 +1,219 @@
+package chess.tools;
+
+import chess.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Searches every position of an EPD file and writes each line back with the result appended as EPD operations:
+ *  acd (depth), acn (nodes), ce (score in centipawns for the player to move) and pm (best move, in SAN)
+ * The file is streamed: at most a window of positions is read ahead of the output, the reader waits for the oldest
+ * result once the window is full, and results are written in input order as soon as they are ready
+ * Each worker thread keeps its own single-threaded ChessAI and transposition table
+ * Usage: java chess.tools.EpdAnalyzer [options] positions.epd (- for standard input)
+ *   --out file      file to write (default: standard output)
+ *   --depth n       depth to search every position to (default: 6)
+ *   --movetime ms   time budget per position (default: none, only the depth limits the search)
+ *   --threads n     worker threads (default: available processors)
+ *   --hash mb       transposition table per worker in megabytes (default: 16)
+ *   --window n      positions in flight at most (default: 4 per worker)
+ */
+public class EpdAnalyzer {
+
+    /** Time budget that never runs out before the depth limit */
+    private static final long UNLIMITED_MILLIS = Long.MAX_VALUE / 2000000;
+
+    /** Result of one line, with whether it had a best move (bm) and whether the search found it */
+    private static class Analysis {
+        final String m_line;
+        final long m_nodes;
+        final boolean m_hasBestMove;
+        final boolean m_solved;
+
+        Analysis(String line, long nodes, boolean hasBestMove, boolean solved) {
+            m_line = line;
+            m_nodes = nodes;
+            m_hasBestMove = hasBestMove;
+            m_solved = solved;
+        }
+    }
+
+    /** The board and AI of one worker thread */
+    private static class Engine {
+        final Board m_board = new Board();
+        final ChessAI m_ai;
+
+        Engine(int depth, long moveTime, int megabytes) {
+            m_ai = new ChessAI(m_board, new BoardHistory(), megabytes);
+            m_ai.setMaxDepth(depth);
+            m_ai.setTimeBudget(moveTime);
+        }
+    }
+
+    /** The engine of each worker thread, created on its first position */
+    private final ThreadLocal<Engine> m_engines;
+
+    private EpdAnalyzer(int depth, long moveTime, int megabytes) {
+        m_engines = ThreadLocal.withInitial(() -> new Engine(depth, moveTime, megabytes));
+    }
+
+    /** Returns the line with an error operation appended, for a line that could not be analyzed */
+    private static Analysis error(String line, String message) {
+        String text = (message == null) ? "analysis failed" : message.replace('"', '\'');
+        return new Analysis(line + " ; error \"" + text + "\";", 0, false, false);
+    }
+
+    /** Searches the position of one EPD line, a line that cannot be read or searched gets an error operation instead */
+    private Analysis analyze(String line) {
+        try {
+            return search(line);
+        } catch (RuntimeException e) {
+            return error(line, e.toString());
+        }
+    }
+
+    /** Searches the position of one EPD line, a checkmate or stalemate is scored without searching */
+    private Analysis search(String line) {
+        String[] fields = line.trim().split("\\s+", 5);
+        if (fields.length < 4) return error(line, "incomplete position");
+        String operations = (fields.length > 4) ? fields[4].trim() : "";
+        Engine engine = m_engines.get();
+        Board board = engine.m_board;
+        try {
+            board.loadFen(fields[0] + " " + fields[1] + " " + fields[2] + " " + fields[3]);
+        } catch (IllegalArgumentException e) {
+            return error(line, e.getMessage());
+        }
+        List<Integer> bestMoves = new ArrayList<Integer>();
+        String bestMoveOperation = getOperation(operations, "bm");
+        if (bestMoveOperation != null) {
+            for (String san : bestMoveOperation.split("\\s+")) {
+                int move = Move.fromSan(board, san);
+                if (move != Move.NONE) bestMoves.add(Move.getStart(move) | Move.getFinal(move) << 6);
+            }
+        }
+
+        StringBuilder output = new StringBuilder(line.trim());
+        if (!operations.isEmpty() && !operations.endsWith(";")) output.append(';');
+        if (board.generateLegalMoves(new int[MoveGenerator.MAX_MOVES]) == 0) {
+            // nothing to search: the player to move is checkmated (scored like a mate found by the search) or stalemated
+            int score = board.isKingChecked(board.m_whiteTurn) ? -SearchWorker.MATE_SCORE : 0;
+            output.append(String.format(" acd 0; acn 0; ce %d;", score));
+            return new Analysis(output.toString(), 0, bestMoveOperation != null, false);
+        }
+        SearchResult result = engine.m_ai.search();
+        output.append(String.format(" acd %d; acn %d; ce %d;", result.m_depth, result.m_nodes, result.m_score));
+        if (result.m_move != Move.NONE) output.append(" pm ").append(Move.toSan(board, result.m_move)).append(';');
+        boolean solved = bestMoves.contains(Move.getStart(result.m_move) | Move.getFinal(result.m_move) << 6);
+        return new Analysis(output.toString(), result.m_nodes, bestMoveOperation != null, solved);
+    }
+
+    /** Returns the operand of the EPD operation with the given opcode, or null if the operations do not have it */
+    private static String getOperation(String operations, String opcode) {
+        for (String operation : operations.split(";")) {
+            String[] parts = operation.trim().split("\\s+", 2);
+            if (parts[0].equals(opcode) && parts.length > 1) return parts[1].replace("\"", "").trim();
+        }
+        return null;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String input = null;
+        String outputFile = null;
+        int depth = 6;
+        long moveTime = UNLIMITED_MILLIS;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int megabytes = 16;
+        int window = 0;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--out":
+                    outputFile = args[++i];
+                    break;
+                case "--depth":
+                    depth = Integer.parseInt(args[++i]);
+                    break;
+                case "--movetime":
+                    moveTime = Long.parseLong(args[++i]);
+                    break;
+                case "--threads":
+                    threads = Math.max(1, Integer.parseInt(args[++i]));
+                    break;
+                case "--hash":
+                    megabytes = Integer.parseInt(args[++i]);
+                    break;
+                case "--window":
+                    window = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    if (args[i].startsWith("--")) {
+                        System.err.println("Unknown option " + args[i]);
+                        System.exit(2);
+                    }
+                    input = args[i];
+            }
+        }
+        if (input == null) {
+            System.err.println("Usage: java chess.tools.EpdAnalyzer [options] positions.epd");
+            System.exit(2);
+        }
+        if (window < 1) window = 4 * threads;
+
+        EpdAnalyzer analyzer = new EpdAnalyzer(depth, moveTime, megabytes);
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "chess-epd-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Deque<Future<Analysis>> inFlight = new ArrayDeque<Future<Analysis>>();
+        long start = System.nanoTime();
+        long positions = 0;
+        long nodes = 0;
+        int withBestMove = 0;
+        int solved = 0;
+        try (BufferedReader reader = input.equals("-")
+                 ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                 : Files.newBufferedReader(Paths.get(input), StandardCharsets.UTF_8);
+             PrintWriter writer = (outputFile == null)
+                 ? new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))
+                 : new PrintWriter(Files.newBufferedWriter(Paths.get(outputFile), StandardCharsets.UTF_8))) {
+            String line;
+            boolean reading = true;
+            while (reading || !inFlight.isEmpty()) {
+                // read ahead until the window is full, then write the oldest result before reading on
+                if (reading && inFlight.size() < window) {
+                    line = reader.readLine();
+                    if (line == null) {
+                        reading = false;
+                    } else if (!line.trim().isEmpty() && !line.startsWith("#")) {
+                        String epd = line;
+                        inFlight.add(pool.submit(() -> analyzer.analyze(epd)));
+                    }
+                    continue;
+                }
+                Analysis analysis;
+                try {
+                    analysis = inFlight.remove().get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Analysis failed", e.getCause());
+                }
+                writer.println(analysis.m_line);
+                positions++;
+                nodes += analysis.m_nodes;
+                if (analysis.m_hasBestMove) withBestMove++;
+                if (analysis.m_solved) solved++;
+                // flush every result so the output can be followed while the analysis runs
+                writer.flush();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        long millis = Math.max(1, (System.nanoTime() - start) / 1000000);
+        System.err.printf("%d positions in %d ms (%.1f positions/s, %d nodes/s)%n", positions, millis,
+                          positions * 1000.0 / millis, nodes * 1000 / millis);
+        if (withBestMove > 0) System.err.printf("%d of %d best moves found%n", solved, withBestMove);
+    }
+}
@@ -0,0 +1,211 @@
+package chess.tools;
+
+import chess.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Counts the leaf positions of the legal move tree to a fixed depth (perft) to validate and time move generation
+ * Usage: java chess.tools.Perft [options]
+ *   --fen "<fen>"   position to count from (default: the starting position)
+ *   --depth n       depth to count to (default: 5)
+ *   --divide        also print the count below every root move
+ *   --threads n     split the root moves over n threads (default: 1)
+ *   --hash mb       share a table of subtree counts of the given size in megabytes (default: off)
+ *   --suite         run the reference positions and compare with their known counts
+ */
+public class Perft {
+
+    /** Reference positions with their depth and known leaf count */
+    private static final String[][] SUITE = {
+        {"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1", "5", "4865609"},
+        // Kiwipete: castling, en passant, promotions and pins all at once
+        {"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1", "4", "4085603"},
+        {"8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1", "5", "674624"},
+        {"r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1", "4", "422333"},
+        {"rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8", "4", "2103487"},
+        {"r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10", "4", "3894594"},
+        // en passant that would expose the king, and en passant giving check
+        {"3k4/3p4/8/K1P4r/8/8/8/8 b - - 0 1", "6", "1134888"},
+        {"8/8/4k3/8/2p5/8/B2P2K1/8 w - - 0 1", "6", "1015133"},
+        {"8/8/1k6/2b5/2pP4/8/5K2/8 b - d3 0 1", "6", "1440467"},
+        // castling giving check, castling rights and castling through attacked squares
+        {"5k2/8/8/8/8/8/8/4K2R w K - 0 1", "6", "661072"},
+        {"3k4/8/8/8/8/8/8/R3K3 w Q - 0 1", "6", "803711"},
+        {"r3k2r/1b4bq/8/8/8/8/7B/R3K2R w KQkq - 0 1", "4", "1274206"},
+        {"r3k2r/8/3Q4/8/8/5q2/8/R3K2R b KQkq - 0 1", "4", "1720476"},
+        // promotions out of check, giving check and under-promotions
+        {"2K2r2/4P3/8/8/8/8/8/3k4 w - - 0 1", "6", "3821001"},
+        {"8/8/1P2K3/8/2n5/1q6/8/5k2 b - - 0 1", "5", "1004658"},
+        {"4k3/1P6/8/8/8/8/K7/8 w - - 0 1", "6", "217342"},
+        {"8/P1k5/K7/8/8/8/8/8 w - - 0 1", "6", "92683"},
+        // stalemate and checkmate
+        {"K1k5/8/P7/8/8/8/8/8 w - - 0 1", "6", "2217"},
+        {"8/k1P5/8/1K6/8/8/8/8 w - - 0 1", "7", "567584"},
+        {"8/8/2k5/5q2/5n2/8/5K2/8 b - - 0 1", "4", "23527"},
+    };
+
+    private static final String START_FEN = SUITE[0][0];
+
+    /** Shared table of subtree counts, one entry per slot stored as (key xor data, data)
+     *  with data = count << 8 | depth, so entries torn by concurrent writes read as misses */
+    private static class CountTable {
+        private final long[] m_entries;
+        private final int m_mask;
+
+        CountTable(int megabytes) {
+            int slots = Integer.highestOneBit((int) Math.min(1 << 30, Math.max(1L, ((long) megabytes << 20) / 16)));
+            m_entries = new long[slots * 2];
+            m_mask = slots - 1;
+        }
+
+        /** Returns the count stored for the position at the depth, or -1 */
+        long probe(long key, int depth) {
+            int index = ((int) key & m_mask) * 2;
+            long data = m_entries[index + 1];
+            if ((m_entries[index] ^ data) == key && (data & 0xFF) == depth) return data >>> 8;
+            return -1;
+        }
+
+        void store(long key, int depth, long count) {
+            int index = ((int) key & m_mask) * 2;
+            long data = (count << 8) | depth;
+            m_entries[index] = key ^ data;
+            m_entries[index + 1] = data;
+        }
+    }
+
+    /** Counts the leaves below the position using one move buffer per ply
+     *  The last ply is counted without making the moves (bulk counting) */
+    private static long perft(Board board, int depth, int[][] moves, CountTable table) {
+        int ply = moves.length - depth;
+        int count = board.generateLegalMoves(moves[ply]);
+        if (depth == 1) return count;
+        long key = board.getKey();
+        if (table != null) {
+            long stored = table.probe(key, depth);
+            if (stored >= 0) return stored;
+        }
+        long nodes = 0;
+        for (int i = 0; i < count; i++) {
+            board.makeMove(moves[ply][i]);
+            nodes += perft(board, depth - 1, moves, table);
+            board.unmakeMove();
+        }
+        if (table != null) table.store(key, depth, nodes);
+        return nodes;
+    }
+
+    /** Counts the leaves below every root move, spreading the root moves over the threads
+     *  Each root move gets its own copy of the board so threads share nothing but the count table */
+    private static long[] divide(Board board, int depth, int[] rootMoves, int count, int threads, CountTable table)
+            throws InterruptedException, ExecutionException {
+        long[] nodes = new long[count];
+        if (depth == 1) {
+            Arrays.fill(nodes, 1);
+            return nodes;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Long>> results = new ArrayList<Future<Long>>();
+            for (int i = 0; i < count; i++) {
+                int move = rootMoves[i];
+                results.add(pool.submit(() -> {
+                    Board copy = new Board(board);
+                    copy.makeMove(move);
+                    return perft(copy, depth - 1, new int[depth - 1][MoveGenerator.MAX_MOVES], table);
+                }));
+            }
+            for (int i = 0; i < count; i++) {
+                nodes[i] = results.get(i).get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return nodes;
+    }
+
+    /** Counts the position and returns the total, printing the root moves if asked */
+    private static long run(String fen, int depth, boolean printDivide, int threads, CountTable table)
+            throws InterruptedException, ExecutionException {
+        Board board = new Board();
+        board.loadFen(fen);
+        int[] rootMoves = new int[MoveGenerator.MAX_MOVES];
+        int count = board.generateLegalMoves(rootMoves);
+        long[] nodes = divide(board, depth, rootMoves, count, threads, table);
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            if (printDivide) System.out.println(Move.toText(rootMoves[i]) + ": " + nodes[i]);
+            total += nodes[i];
+        }
+        return total;
+    }
+
+    public static void main(String[] args) throws InterruptedException, ExecutionException {
+        String fen = START_FEN;
+        int depth = 5;
+        boolean printDivide = false;
+        boolean suite = false;
+        int threads = 1;
+        int megabytes = 0;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--fen":
+                    fen = args[++i];
+                    break;
+                case "--depth":
+                    depth = Integer.parseInt(args[++i]);
+                    break;
+                case "--divide":
+                    printDivide = true;
+                    break;
+                case "--threads":
+                    threads = Math.max(1, Integer.parseInt(args[++i]));
+                    break;
+                case "--hash":
+                    megabytes = Integer.parseInt(args[++i]);
+                    break;
+                case "--suite":
+                    suite = true;
+                    break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(2);
+            }
+        }
+        if (depth < 1 || depth >= Board.MAX_PLY) {
+            System.err.println("Depth must be between 1 and " + (Board.MAX_PLY - 1));
+            System.exit(2);
+        }
+
+        if (!suite) {
+            long start = System.nanoTime();
+            long nodes = run(fen, depth, printDivide, threads, (megabytes > 0) ? new CountTable(megabytes) : null);
+            long millis = (System.nanoTime() - start) / 1000000;
+            System.out.printf("Nodes: %d%nTime: %d ms%nNodes/s: %d%n", nodes, millis, nodes * 1000 / Math.max(1, millis));
+            return;
+        }
+
+        int failures = 0;
+        long totalNodes = 0;
+        long totalMillis = 0;
+        System.out.printf("%-6s %5s %12s %10s %12s  %s%n", "result", "depth", "nodes", "time (ms)", "nodes/s", "position");
+        for (String[] position : SUITE) {
+            int positionDepth = Integer.parseInt(position[1]);
+            long expected = Long.parseLong(position[2]);
+            long start = System.nanoTime();
+            // a fresh table per position keeps the timings independent of each other
+            long nodes = run(position[0], positionDepth, false, threads, (megabytes > 0) ? new CountTable(megabytes) : null);
+            long millis = (System.nanoTime() - start) / 1000000;
+            boolean passed = nodes == expected;
+            if (!passed) failures++;
+            totalNodes += nodes;
+            totalMillis += millis;
+            System.out.printf("%-6s %5d %12d %10d %12d  %s%s%n", passed ? "ok" : "FAILED", positionDepth, nodes, millis,
+                              nodes * 1000 / Math.max(1, millis), position[0], passed ? "" : " (expected " + expected + ")");
+        }
+        System.out.printf("%d of %d positions passed, %d nodes in %d ms (%d nodes/s)%n", SUITE.length - failures,
+                          SUITE.length, totalNodes, totalMillis, totalNodes * 1000 / Math.max(1, totalMillis));
+        if (failures > 0) System.exit(1);
+    }
+}
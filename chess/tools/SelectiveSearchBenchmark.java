@@ -0,0 +1,73 @@
+package chess.tools;
+
+import chess.*;
+
+/**
+ * Reports how many nodes and how much time each selective search technique of ChessAI saves on the way to a fixed depth
+ * Every technique is measured alone against a full-width search, then all of them together
+ * Usage: java chess.tools.SelectiveSearchBenchmark [depth] [tableMegabytes]
+ */
+public class SelectiveSearchBenchmark {
+
+    private static final String[] POSITIONS = {
+        "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+        "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+        "r1bq1rk1/pp2bppp/2n1pn2/3p4/2PP4/2N1PN2/PP3PPP/R2QKB1R w KQ - 0 8",
+        "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+    };
+
+    /** Names of the configurations and which techniques they switch on:
+     *  null move pruning, late move reductions, futility pruning, razoring */
+    private static final String[] NAMES = {"full width", "null move", "reductions", "futility", "razoring", "all"};
+    private static final boolean[][] SWITCHES = {
+        {false, false, false, false},
+        {true, false, false, false},
+        {false, true, false, false},
+        {false, false, true, false},
+        {false, false, false, true},
+        {true, true, true, true},
+    };
+
+    /** Searches every position to the depth with the given techniques and returns {nodes, milliseconds} */
+    private static long[] run(ChessAI ai, Board board, boolean[] switches) {
+        ai.setNullMovePruning(switches[0]);
+        ai.setLateMoveReductions(switches[1]);
+        ai.setFutilityPruning(switches[2]);
+        ai.setRazoring(switches[3]);
+        long nodes = 0;
+        long millis = 0;
+        for (String fen : POSITIONS) {
+            board.loadFen(fen);
+            ai.clearTable();
+            SearchResult result = ai.search();
+            nodes += result.m_nodes;
+            millis += result.m_millis;
+        }
+        return new long[] {nodes, millis};
+    }
+
+    public static void main(String[] args) {
+        int depth = (args.length > 0) ? Integer.parseInt(args[0]) : 6;
+        int megabytes = (args.length > 1) ? Integer.parseInt(args[1]) : ChessAI.DEFAULT_TABLE_MEGABYTES;
+        Board board = new Board();
+        ChessAI ai = new ChessAI(board, new BoardHistory(), megabytes);
+        ai.setTimeBudget(Long.MAX_VALUE / 2000000);
+
+        // warm up the JIT so the first row is not penalized
+        ai.setMaxDepth(depth - 1);
+        run(ai, board, SWITCHES[0]);
+        ai.setMaxDepth(depth);
+
+        System.out.printf("Search to depth %d over %d positions%n", depth, POSITIONS.length);
+        System.out.printf("%-12s %14s %10s %12s %10s%n", "technique", "nodes", "nodes (%)", "time (ms)", "time (%)");
+        long[] base = null;
+        for (int i = 0; i < NAMES.length; i++) {
+            long[] result = run(ai, board, SWITCHES[i]);
+            if (base == null) base = result;
+            System.out.printf("%-12s %14d %10.1f %12d %10.1f%n", NAMES[i], result[0], 100.0 * result[0] / Math.max(1, base[0]),
+                              result[1], 100.0 * result[1] / Math.max(1, base[1]));
+        }
+        ai.shutdown();
+    }
+}
@@ -0,0 +1,462 @@
+package chess.tools;
+
+import chess.*;
+import mytools.Coordinates;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Plays games between two differently configured AIs (A, the candidate, against B, the baseline) on every core
+ * and estimates their Elo difference, with a sequential probability ratio test (SPRT) that decides between
+ * "A is no stronger than B by elo0" and "A is stronger by elo1" as soon as the games allow it
+ * Every opening is played twice with the colours swapped; each worker thread keeps its own board, history
+ * and two single-threaded AIs with their own transposition tables, and only immutable results leave a game
+ * Usage: java chess.tools.SelfPlay [options]
+ *   --games n        games to play at most (default: 200)
+ *   --threads n      games played at once (default: available processors)
+ *   --openings file  FEN or EPD positions to start from, shuffled (default: the starting position)
+ *   --seed n         seed of the opening shuffle (default: random)
+ *   --hash mb        transposition table of each AI in megabytes (default: 8)
+ *   --max-plies n    plies after which a game is a draw (default: 300)
+ *   --a settings     settings of A, for example time=200,depth=8,nullmove=off (default: time=100)
+ *   --b settings     settings of B (default: time=100)
+ *                    keys: time (ms per move), depth, selective, nullmove, lmr, futility, razoring (on/off)
+ *   --sprt e0,e1     Elo bounds of the SPRT (default: 0,5)
+ *   --alpha p        false positive rate of the SPRT (default: 0.05)
+ *   --beta p         false negative rate of the SPRT (default: 0.05)
+ *   --report n       games between progress lines (default: 20)
+ * Exits with 0 if the SPRT accepts A as stronger, 1 if it rejects A and 3 if the games ran out first
+ */
+public class SelfPlay {
+
+    /** Search settings of one side */
+    private static class Settings {
+        long m_timeMillis = 100;
+        int m_depth = ChessAI.MAX_DEPTH;
+        boolean m_nullMovePruning = true;
+        boolean m_lateMoveReductions = true;
+        boolean m_futilityPruning = true;
+        boolean m_razoring = true;
+
+        /** Reads comma separated key=value pairs */
+        static Settings parse(String text) {
+            Settings settings = new Settings();
+            for (String pair : text.split(",")) {
+                if (pair.trim().isEmpty()) continue;
+                String[] parts = pair.trim().split("=", 2);
+                if (parts.length < 2) throw new IllegalArgumentException("Setting without a value: " + pair);
+                String value = parts[1].trim();
+                switch (parts[0].trim()) {
+                    case "time":
+                        settings.m_timeMillis = Long.parseLong(value);
+                        break;
+                    case "depth":
+                        settings.m_depth = Integer.parseInt(value);
+                        break;
+                    case "selective":
+                        settings.m_nullMovePruning = parseSwitch(value);
+                        settings.m_lateMoveReductions = settings.m_nullMovePruning;
+                        settings.m_futilityPruning = settings.m_nullMovePruning;
+                        settings.m_razoring = settings.m_nullMovePruning;
+                        break;
+                    case "nullmove":
+                        settings.m_nullMovePruning = parseSwitch(value);
+                        break;
+                    case "lmr":
+                        settings.m_lateMoveReductions = parseSwitch(value);
+                        break;
+                    case "futility":
+                        settings.m_futilityPruning = parseSwitch(value);
+                        break;
+                    case "razoring":
+                        settings.m_razoring = parseSwitch(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown setting " + parts[0]);
+                }
+            }
+            return settings;
+        }
+
+        private static boolean parseSwitch(String value) {
+            if (value.equals("on") || value.equals("true")) return true;
+            if (value.equals("off") || value.equals("false")) return false;
+            throw new IllegalArgumentException("Expected on or off: " + value);
+        }
+
+        void applyTo(ChessAI ai) {
+            ai.setTimeBudget(m_timeMillis);
+            ai.setMaxDepth(m_depth);
+            ai.setNullMovePruning(m_nullMovePruning);
+            ai.setLateMoveReductions(m_lateMoveReductions);
+            ai.setFutilityPruning(m_futilityPruning);
+            ai.setRazoring(m_razoring);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("time=%d depth=%d nullmove=%s lmr=%s futility=%s razoring=%s", m_timeMillis, m_depth,
+                                 onOff(m_nullMovePruning), onOff(m_lateMoveReductions), onOff(m_futilityPruning), onOff(m_razoring));
+        }
+
+        private static String onOff(boolean enabled) {
+            return enabled ? "on" : "off";
+        }
+    }
+
+    /** The board, history and AIs of one worker thread, index 0 is A and 1 is B */
+    private static class Engines {
+        final Board m_board = new Board();
+        final BoardHistory m_history = new BoardHistory();
+        final ChessAI[] m_ais = new ChessAI[2];
+
+        Engines(Settings[] settings, int megabytes) {
+            for (int side = 0; side < 2; side++) {
+                m_ais[side] = new ChessAI(m_board, m_history, megabytes);
+                settings[side].applyTo(m_ais[side]);
+            }
+        }
+    }
+
+    /** Outcome of one game from the point of view of A */
+    private static class GameResult {
+        final int m_game;
+        /** 2 for a win of A, 1 for a draw, 0 for a loss */
+        final int m_points;
+        final String m_reason;
+        final int m_plies;
+        final long m_millis;
+        /** Per side (0 is A): moves searched, sum of their depths, nodes and search milliseconds */
+        final long[] m_moves = new long[2];
+        final long[] m_depths = new long[2];
+        final long[] m_nodes = new long[2];
+        final long[] m_searchMillis = new long[2];
+
+        GameResult(int game, int points, String reason, int plies, long millis) {
+            m_game = game;
+            m_points = points;
+            m_reason = reason;
+            m_plies = plies;
+            m_millis = millis;
+        }
+    }
+
+    private final List<String> m_openings;
+    private final int m_maxPlies;
+    /** The engines of each worker thread, created on its first game */
+    private final ThreadLocal<Engines> m_engines;
+
+    private SelfPlay(List<String> openings, int maxPlies, Settings[] settings, int megabytes) {
+        m_openings = openings;
+        m_maxPlies = maxPlies;
+        m_engines = ThreadLocal.withInitial(() -> new Engines(settings, megabytes));
+    }
+
+    /** Plays one game: games 2n and 2n+1 start from the same opening, A playing white in the first of them */
+    private GameResult play(int game) {
+        Engines engines = m_engines.get();
+        Board board = engines.m_board;
+        BoardHistory history = engines.m_history;
+        board.loadFen(m_openings.get(game / 2 % m_openings.size()));
+        history.clear();
+        for (ChessAI ai : engines.m_ais) {
+            ai.clearTable();
+        }
+        boolean aIsWhite = game % 2 == 0;
+        long start = System.nanoTime();
+        long[] moves = new long[2];
+        long[] depths = new long[2];
+        long[] nodes = new long[2];
+        long[] searchMillis = new long[2];
+        int plies = 0;
+        int points;
+        String reason;
+        // the same end conditions as GameMain, plus a ply limit
+        while (true) {
+            if (board.hasLost()) {
+                points = (board.m_whiteTurn == aIsWhite) ? 0 : 2;
+                reason = "checkmate";
+                break;
+            } else if (board.reachedTurnLimit()) {
+                points = 1;
+                reason = "fifty moves";
+                break;
+            } else if (board.isDraw()) {
+                points = 1;
+                reason = "stalemate";
+                break;
+            } else if (history.foundRecentlyNTimes(board, 2)) {
+                points = 1;
+                reason = "repetition";
+                break;
+            } else if (plies >= m_maxPlies) {
+                points = 1;
+                reason = "ply limit";
+                break;
+            }
+            int side = (board.m_whiteTurn == aIsWhite) ? 0 : 1;
+            Coordinates[] chessMove = new Coordinates[2];
+            char[] pawnEvolution = {'.'};
+            ChessAI ai = engines.m_ais[side];
+            ai.generateNextMove(chessMove, pawnEvolution);
+            SearchResult result = ai.getLastResult();
+            moves[side]++;
+            depths[side] += result.m_depth;
+            nodes[side] += result.m_nodes;
+            searchMillis[side] += result.m_millis;
+            history.addBoard(board);
+            board.moveSelectedPiece(chessMove[0], chessMove[1]);
+            if (board.pawnReachedEnd()) board.evolvePawn(pawnEvolution[0]);
+            plies++;
+        }
+        GameResult gameResult = new GameResult(game, points, reason, plies, (System.nanoTime() - start) / 1000000);
+        System.arraycopy(moves, 0, gameResult.m_moves, 0, 2);
+        System.arraycopy(depths, 0, gameResult.m_depths, 0, 2);
+        System.arraycopy(nodes, 0, gameResult.m_nodes, 0, 2);
+        System.arraycopy(searchMillis, 0, gameResult.m_searchMillis, 0, 2);
+        return gameResult;
+    }
+
+    /** Reads the positions of a FEN or EPD file, EPD operations and move counters that are not numbers are left out */
+    private static List<String> readOpenings(Path path) throws IOException {
+        List<String> openings = new ArrayList<String>();
+        Board board = new Board();
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            String[] fields = line.trim().split("\\s+");
+            if (fields.length < 4 || line.startsWith("#")) continue;
+            String fen = fields[0] + " " + fields[1] + " " + fields[2] + " " + fields[3];
+            if (fields.length > 4 && fields[4].matches("\\d+")) fen += " " + fields[4];
+            board.loadFen(fen);
+            openings.add(fen);
+        }
+        if (openings.isEmpty()) throw new IOException("No positions in " + path);
+        return openings;
+    }
+
+    /** Converts an expected score between 0 and 1 into an Elo difference */
+    private static double toElo(double score) {
+        score = Math.max(0.001, Math.min(0.999, score));
+        return -400 * Math.log10(1 / score - 1);
+    }
+
+    /** Converts an Elo difference into an expected score between 0 and 1 */
+    private static double toScore(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    /** Wins, draws and losses of A so far, with the Elo estimate and the log-likelihood ratio of the SPRT */
+    private static class Tally {
+        int m_wins;
+        int m_draws;
+        int m_losses;
+
+        int getGames() {
+            return m_wins + m_draws + m_losses;
+        }
+
+        double getScore() {
+            return (m_wins + 0.5 * m_draws) / Math.max(1, getGames());
+        }
+
+        /** Returns the variance of the score of one game */
+        double getVariance() {
+            double score = getScore();
+            int games = Math.max(1, getGames());
+            return (m_wins * (1 - score) * (1 - score) + m_draws * (0.5 - score) * (0.5 - score)
+                    + m_losses * score * score) / games;
+        }
+
+        /** Returns the half width of the 95% confidence interval of the Elo difference */
+        double getEloMargin() {
+            double margin = 1.96 * Math.sqrt(getVariance() / Math.max(1, getGames()));
+            return (toElo(getScore() + margin) - toElo(getScore() - margin)) / 2;
+        }
+
+        /** Returns the log-likelihood ratio of A being elo1 rather than elo0 stronger than B,
+         *  approximating the game scores by a normal distribution with the observed variance */
+        double getLogLikelihoodRatio(double elo0, double elo1) {
+            double variance = getVariance();
+            if (getGames() == 0 || variance == 0) return 0;
+            double score0 = toScore(elo0);
+            double score1 = toScore(elo1);
+            return getGames() * (score1 - score0) * (2 * getScore() - score0 - score1) / (2 * variance);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("+%d =%d -%d, score %.1f%%, Elo %+.1f +/- %.1f", m_wins, m_draws, m_losses,
+                                 100 * getScore(), toElo(getScore()), getEloMargin());
+        }
+    }
+
+    private static void usage() {
+        System.err.println("Usage: java chess.tools.SelfPlay [--games n] [--threads n] [--openings file] [--seed n] [--hash mb]");
+        System.err.println("       [--max-plies n] [--a settings] [--b settings] [--sprt elo0,elo1] [--alpha p] [--beta p] [--report n]");
+        System.exit(2);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int games = 200;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path openingsFile = null;
+        long seed = new Random().nextLong();
+        int megabytes = 8;
+        int maxPlies = 300;
+        Settings[] settings = {new Settings(), new Settings()};
+        double elo0 = 0;
+        double elo1 = 5;
+        double alpha = 0.05;
+        double beta = 0.05;
+        int report = 20;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--games":
+                        games = Integer.parseInt(args[++i]);
+                        break;
+                    case "--threads":
+                        threads = Math.max(1, Integer.parseInt(args[++i]));
+                        break;
+                    case "--openings":
+                        openingsFile = Paths.get(args[++i]);
+                        break;
+                    case "--seed":
+                        seed = Long.parseLong(args[++i]);
+                        break;
+                    case "--hash":
+                        megabytes = Integer.parseInt(args[++i]);
+                        break;
+                    case "--max-plies":
+                        maxPlies = Integer.parseInt(args[++i]);
+                        break;
+                    case "--a":
+                        settings[0] = Settings.parse(args[++i]);
+                        break;
+                    case "--b":
+                        settings[1] = Settings.parse(args[++i]);
+                        break;
+                    case "--sprt":
+                        String[] bounds = args[++i].split(",");
+                        elo0 = Double.parseDouble(bounds[0]);
+                        elo1 = Double.parseDouble(bounds[1]);
+                        break;
+                    case "--alpha":
+                        alpha = Double.parseDouble(args[++i]);
+                        break;
+                    case "--beta":
+                        beta = Double.parseDouble(args[++i]);
+                        break;
+                    case "--report":
+                        report = Math.max(1, Integer.parseInt(args[++i]));
+                        break;
+                    default:
+                        System.err.println("Unknown option " + args[i]);
+                        usage();
+                }
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("Invalid arguments: " + e.getMessage());
+            usage();
+        }
+        List<String> openings = (openingsFile == null)
+            ? new ArrayList<String>(Collections.singletonList("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq -"))
+            : readOpenings(openingsFile);
+        Collections.shuffle(openings, new Random(seed));
+        double lowerBound = Math.log(beta / (1 - alpha));
+        double upperBound = Math.log((1 - beta) / alpha);
+
+        System.out.println("A: " + settings[0]);
+        System.out.println("B: " + settings[1]);
+        System.out.printf("%d games on %d threads, %d openings (seed %d), SPRT elo0 %.1f elo1 %.1f bounds [%.2f, %.2f]%n",
+                          games, threads, openings.size(), seed, elo0, elo1, lowerBound, upperBound);
+
+        SelfPlay selfPlay = new SelfPlay(openings, maxPlies, settings, megabytes);
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "chess-self-play");
+            thread.setDaemon(true);
+            return thread;
+        });
+        CompletionService<GameResult> completed = new ExecutorCompletionService<GameResult>(pool);
+        for (int game = 0; game < games; game++) {
+            int number = game;
+            completed.submit(() -> selfPlay.play(number));
+        }
+
+        // the results are only counted on this thread
+        Tally tally = new Tally();
+        Map<String, Integer> reasons = new TreeMap<String, Integer>();
+        long plies = 0;
+        int shortestGame = Integer.MAX_VALUE;
+        int longestGame = 0;
+        long gameMillis = 0;
+        long[] moves = new long[2];
+        long[] depths = new long[2];
+        long[] nodes = new long[2];
+        long[] searchMillis = new long[2];
+        long start = System.nanoTime();
+        double llr = 0;
+        int decision = 3;
+        for (int played = 0; played < games; played++) {
+            GameResult result;
+            try {
+                result = completed.take().get();
+            } catch (ExecutionException e) {
+                pool.shutdownNow();
+                throw new IllegalStateException("Game failed", e.getCause());
+            }
+            if (result.m_points == 2) {
+                tally.m_wins++;
+            } else if (result.m_points == 1) {
+                tally.m_draws++;
+            } else {
+                tally.m_losses++;
+            }
+            reasons.merge(result.m_reason, 1, Integer::sum);
+            plies += result.m_plies;
+            shortestGame = Math.min(shortestGame, result.m_plies);
+            longestGame = Math.max(longestGame, result.m_plies);
+            gameMillis += result.m_millis;
+            for (int side = 0; side < 2; side++) {
+                moves[side] += result.m_moves[side];
+                depths[side] += result.m_depths[side];
+                nodes[side] += result.m_nodes[side];
+                searchMillis[side] += result.m_searchMillis[side];
+            }
+            llr = tally.getLogLikelihoodRatio(elo0, elo1);
+            if (tally.getGames() % report == 0) {
+                System.out.printf("%5d games: %s, LLR %.2f%n", tally.getGames(), tally, llr);
+            }
+            if (llr >= upperBound) {
+                decision = 0;
+                break;
+            } else if (llr <= lowerBound) {
+                decision = 1;
+                break;
+            }
+        }
+        // games still running when the SPRT decides are not counted
+        pool.shutdownNow();
+        long millis = Math.max(1, (System.nanoTime() - start) / 1000000);
+
+        int played = tally.getGames();
+        System.out.println();
+        System.out.printf("%d games in %.1f s (%.2f games/s, %.1f game threads busy on average)%n", played, millis / 1000.0,
+                          played * 1000.0 / millis, (double) gameMillis / millis);
+        System.out.println("Result of A: " + tally);
+        System.out.printf("Game length: %.1f plies on average, %d to %d, %.0f ms on average%n", (double) plies / Math.max(1, played),
+                          (played == 0) ? 0 : shortestGame, longestGame, (double) gameMillis / Math.max(1, played));
+        System.out.println("Endings: " + reasons);
+        for (int side = 0; side < 2; side++) {
+            long sideMoves = Math.max(1, moves[side]);
+            System.out.printf("%s: %.1f average depth, %.0f ms per move, %d nodes/s%n", (side == 0) ? "A" : "B",
+                              (double) depths[side] / sideMoves, (double) searchMillis[side] / sideMoves,
+                              nodes[side] * 1000 / Math.max(1, searchMillis[side]));
+        }
+        String[] verdicts = {"H1 accepted: A is stronger", "H0 accepted: A is not stronger", null, "no decision yet"};
+        System.out.printf("SPRT: LLR %.2f [%.2f, %.2f], %s%n", llr, lowerBound, upperBound, verdicts[decision]);
+        System.exit(decision);
+    }
+}
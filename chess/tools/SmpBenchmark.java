@@ -0,0 +1,82 @@
+package chess.tools;
+
+import chess.*;
+import mytools.Coordinates;
+
+/**
+ * Reports how much faster the lazy SMP search of ChessAI reaches a fixed depth with more threads
+ * Usage: java chess.tools.SmpBenchmark [maxThreads] [depth] [tableMegabytes]
+ * Thread counts double from 1 up to maxThreads (default: available processors)
+ */
+public class SmpBenchmark {
+
+    /** Test positions as moves from the starting position (start and final square of each move) */
+    private static final String[] POSITIONS = {
+        "",
+        "E2E4 E7E5 G1F3 B8C6 F1B5 A7A6 B5A4 G8F6 E1G1 F8E7",
+        "D2D4 G8F6 C2C4 E7E6 B1C3 F8B4 E2E3 E8G8 F1D3 D7D5",
+        "E2E4 C7C5 G1F3 D7D6 D2D4 C5D4 F3D4 G8F6 B1C3 A7A6 C1E3 E7E5 D4B3 C8E6 F2F3 F8E7",
+        "E2E4 E7E6 D2D4 D7D5 B1C3 G8F6 C1G5 F8E7 E4E5 F6D7 G5E7 D8E7 F2F4 E8G8 G1F3 C7C5",
+    };
+
+    /** Converts chess coordinates such as A1 into board coordinates */
+    private static Coordinates toCoordinates(String square) {
+        int col = square.charAt(0) - 'A';
+        int row = Board.ROWS - (square.charAt(1) - '0');
+        return Coordinates.of(row, col);
+    }
+
+    /** Sets up the board by playing the given moves from the starting position */
+    private static void playMoves(Board board, BoardHistory history, String moves) {
+        board.init();
+        history.clear();
+        for (String move : moves.trim().split("\\s+")) {
+            if (move.isEmpty()) continue;
+            history.addBoard(board);
+            board.moveSelectedPiece(toCoordinates(move.substring(0, 2)), toCoordinates(move.substring(2, 4)));
+        }
+    }
+
+    public static void main(String[] args) {
+        int maxThreads = (args.length > 0) ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int depth = (args.length > 1) ? Integer.parseInt(args[1]) : 7;
+        int megabytes = (args.length > 2) ? Integer.parseInt(args[2]) : ChessAI.DEFAULT_TABLE_MEGABYTES;
+
+        // warm up the JIT on one thread so the first row is not penalized
+        Board warmUpBoard = new Board();
+        BoardHistory warmUpHistory = new BoardHistory();
+        ChessAI warmUp = new ChessAI(warmUpBoard, warmUpHistory, megabytes);
+        warmUp.setMaxDepth(depth - 1);
+        warmUp.setTimeBudget(Long.MAX_VALUE / 2000000);
+        for (String position : POSITIONS) {
+            playMoves(warmUpBoard, warmUpHistory, position);
+            warmUp.search();
+        }
+
+        System.out.printf("Time to depth %d over %d positions%n", depth, POSITIONS.length);
+        System.out.printf("%8s %12s %14s %12s %8s%n", "threads", "time (ms)", "nodes", "nodes/s", "speedup");
+        double baseMillis = 0;
+        for (int threads = 1; threads <= maxThreads; threads = (threads < maxThreads && threads*2 > maxThreads) ? maxThreads : threads*2) {
+            Board board = new Board();
+            BoardHistory history = new BoardHistory();
+            ChessAI ai = new ChessAI(board, history, megabytes);
+            ai.setThreads(threads);
+            ai.setMaxDepth(depth);
+            ai.setTimeBudget(Long.MAX_VALUE / 2000000);
+            long millis = 0;
+            long nodes = 0;
+            for (String position : POSITIONS) {
+                playMoves(board, history, position);
+                ai.clearTable();
+                SearchResult result = ai.search();
+                millis += result.m_millis;
+                nodes += result.m_nodes;
+            }
+            ai.shutdown();
+            if (threads == 1) baseMillis = millis;
+            long nodesPerSecond = (millis == 0) ? nodes : nodes * 1000 / millis;
+            System.out.printf("%8d %12d %14d %12d %8.2f%n", threads, millis, nodes, nodesPerSecond,
+                              baseMillis / Math.max(1, millis));
+        }
+    }
+}
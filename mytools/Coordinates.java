@@ -1,13 +1,42 @@
 package mytools;
 
-public class Coordinates {
-    public int m_row, m_col;
+/**
+ * Immutable row and column of a square on an 8x8 board
+ * There is exactly one instance per square, so coordinates can be compared with == and never need allocating
+ */
+public final class Coordinates {
+    public static final int ROWS = 8;
+    public static final int COLS = 8;
 
-    public Coordinates(int row, int col) {
+    private static final Coordinates[] SQUARES = new Coordinates[ROWS * COLS];
+    static {
+        for (int index = 0; index < SQUARES.length; index++) {
+            SQUARES[index] = new Coordinates(index / COLS, index % COLS);
+        }
+    }
+
+    public final int m_row, m_col;
+
+    private Coordinates(int row, int col) {
         m_row = row;
         m_col = col;
     }
 
+    /** Returns the shared coordinates of the given row and column */
+    public static Coordinates of(int row, int col) {
+        return SQUARES[row * COLS + col];
+    }
+
+    /** Returns the shared coordinates of the given square index (row*COLS + col) */
+    public static Coordinates of(int index) {
+        return SQUARES[index];
+    }
+
+    /** Returns the square index (row*COLS + col) */
+    public int index() {
+        return m_row * COLS + m_col;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj == null) return false;
@@ -22,4 +51,4 @@ public class Coordinates {
         int result = 31 * m_row + m_col;
         return result;
     }
-}
\ No newline at end of file
+}